@@ -0,0 +1,235 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finding all occurrences of many patterns in one pass over the text,
+ * with the Aho-Corasick automaton (Aho & Corasick, 1975).
+ *
+ * The automaton is a trie of the patterns, where every state also knows
+ * the longest proper suffix of its string that is a state too (the failure link).
+ * Here the failure links are resolved when building, so the goto table has a
+ * transition for every state and byte, and scanning takes one table lookup per byte.
+ *
+ * To keep the table small, bytes are first mapped to classes: each byte that occurs
+ * in some pattern gets its own class, and all other bytes share class 0 (which always
+ * leads back to the start). The table is one int[] with a row of classes per state.
+ */
+public class AhoCorasick {
+    static final int ALPHABET_SIZE = 256;
+    static final int INITIAL_STATES = 64;
+    // The largest array that the JVM can allocate.
+    static final int MAX_TABLE_SIZE = Integer.MAX_VALUE - 8;
+
+    private final byte[][] patterns;
+    // Duplicate patterns are only added once; this is the pattern that was added.
+    private final int[] representative;
+
+    private final int[] byteClass = new int[ALPHABET_SIZE];
+    private final int numClasses;
+    private int numStates;
+    private int[] gotoTable;
+    // The pattern that ends in each state (or -1), and the next state along
+    // the failure links that has a pattern (or -1).
+    private int[] output;
+    private int[] outputLink;
+
+    public AhoCorasick(List<byte[]> patterns) {
+        this.patterns = patterns.toArray(new byte[0][]);
+        this.representative = new int[this.patterns.length];
+
+        int classes = 1;
+        for (byte[] pattern : this.patterns) {
+            if (pattern.length == 0) {
+                throw new IllegalArgumentException("Cannot search for the empty string");
+            }
+            for (byte b : pattern) {
+                if (this.byteClass[b & 0xFF] == 0) {
+                    this.byteClass[b & 0xFF] = classes++;
+                }
+            }
+        }
+        this.numClasses = classes;
+
+        // The table grows as states are added, so it only has rows for the states of the trie.
+        this.gotoTable = new int[INITIAL_STATES * this.numClasses];
+        this.output = new int[INITIAL_STATES];
+        Arrays.fill(this.output, -1);
+        this.numStates = 1;
+        for (int p = 0; p < this.patterns.length; p++) {
+            this.addPattern(p);
+        }
+        this.buildFailureLinks();
+        this.gotoTable = Arrays.copyOf(this.gotoTable, this.numStates * this.numClasses);
+        this.output = Arrays.copyOf(this.output, this.numStates);
+    }
+
+    public int numStates() {
+        return this.numStates;
+    }
+
+    // Adds the pattern to the trie. Transitions that are still 0 don't exist yet,
+    // since no trie transition leads back to the start state.
+    private void addPattern(int p) {
+        int state = 0;
+        for (byte b : this.patterns[p]) {
+            int i = state * this.numClasses + this.byteClass[b & 0xFF];
+            if (this.gotoTable[i] == 0) {
+                // (Adding the state can replace the table, so this must come before the assignment.)
+                int next = this.addState();
+                this.gotoTable[i] = next;
+            }
+            state = this.gotoTable[i];
+        }
+        if (this.output[state] < 0) {
+            this.output[state] = p;
+        }
+        this.representative[p] = this.output[state];
+    }
+
+    // Adds a new state without any transitions, and doubles the table if it is full.
+    private int addState() {
+        if (this.numStates == this.output.length) {
+            // The table is at most MAX_TABLE_SIZE ints, so the capacity is computed in longs.
+            int capacity = (int) Math.min(2L * this.numStates, MAX_TABLE_SIZE / this.numClasses);
+            if (capacity <= this.numStates) {
+                throw new IllegalArgumentException(String.format(
+                    "The patterns need more than %d states, which is too many for the automaton", this.numStates
+                ));
+            }
+            this.gotoTable = Arrays.copyOf(this.gotoTable, capacity * this.numClasses);
+            int oldCapacity = this.output.length;
+            this.output = Arrays.copyOf(this.output, capacity);
+            Arrays.fill(this.output, oldCapacity, capacity, -1);
+        }
+        return this.numStates++;
+    }
+
+    // Computes the failure links in breadth-first order, and fills in the missing
+    // transitions of each state from the state its failure link points to.
+    private void buildFailureLinks() {
+        int[] failure = new int[this.numStates];
+        this.outputLink = new int[this.numStates];
+        this.outputLink[0] = -1;
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int row = state * this.numClasses;
+            int failureRow = failure[state] * this.numClasses;
+            for (int c = 0; c < this.numClasses; c++) {
+                int next = this.gotoTable[row + c];
+                if (next == 0) {
+                    this.gotoTable[row + c] = state == 0 ? 0 : this.gotoTable[failureRow + c];
+                    continue;
+                }
+                int link = state == 0 ? 0 : this.gotoTable[failureRow + c];
+                failure[next] = link;
+                this.outputLink[next] = this.output[link] >= 0 ? link : this.outputLink[link];
+                queue.add(next);
+            }
+        }
+    }
+
+    // Called for every occurrence, in the order of where the occurrences end.
+    public interface MatchListener {
+        void match(int pattern, int start);
+    }
+
+    // Scans the text once, and reports every occurrence of every (distinct) pattern.
+    public void scan(byte[] text, MatchListener listener) {
+        int state = 0;
+        for (int pos = 0; pos < text.length; pos++) {
+            state = this.gotoTable[state * this.numClasses + this.byteClass[text[pos] & 0xFF]];
+            for (int s = this.output[state] >= 0 ? state : this.outputLink[state]; s >= 0; s = this.outputLink[s]) {
+                int p = this.output[s];
+                listener.match(p, pos + 1 - this.patterns[p].length);
+            }
+        }
+    }
+
+    // Counts the occurrences of each pattern, and collects the first `numMatches` positions
+    // of each (in text order), in `counts` and `positions`.
+    public void findAll(byte[] text, int numMatches, int[] counts, int[][] positions) {
+        int[] found = new int[this.patterns.length];
+        int[][] first = new int[this.patterns.length][];
+        this.scan(text, (p, start) -> {
+            if (found[p] < numMatches) {
+                if (first[p] == null) {
+                    first[p] = new int[numMatches];
+                }
+                first[p][found[p]] = start;
+            }
+            found[p]++;
+        });
+        for (int p = 0; p < this.patterns.length; p++) {
+            int r = this.representative[p];
+            counts[p] = found[r];
+            positions[p] = first[r] == null ? new int[0] : Arrays.copyOf(first[r], Math.min(found[r], numMatches));
+        }
+    }
+
+    // Writes one line per pattern, in the same format as `BatchSearch.writeResults`,
+    // but the positions are the first ones in the text. In a corpus (if `documents` is not null),
+    // the positions are "name:offset" within each document.
+    public static void writeResults(List<String> patterns, int[] counts, int[][] positions, DocumentTable documents, Path file)
+        throws IOException
+    {
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file, SuffixArray.ENCODING))) {
+            for (int p = 0; p < patterns.size(); p++) {
+                writer.write(patterns.get(p).replace("\\", "\\\\").replace("\t", "\\t"));
+                writer.write('\t');
+                writer.write(String.valueOf(counts[p]));
+                writer.write('\t');
+                for (int i = 0; i < positions[p].length; i++) {
+                    if (i > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(documents != null ? documents.location(positions[p][i]) : String.valueOf(positions[p][i]));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        String alphabet = "ABCD";
+        int size = 10_000_000;
+        sa.generateRandomText(size, alphabet);
+
+        // Compare with searching for each pattern separately.
+        String[] values = {"A", "AB", "ABC", "BCA", "CAB", "ABCD", "DCBA", "AAAAAAAA", "ABCDABCDAB", "AB"};
+        List<byte[]> patterns = new ArrayList<>();
+        for (String value : values) {
+            patterns.add(value.getBytes(SuffixArray.ENCODING));
+        }
+        Stopwatch stopwatch = new Stopwatch();
+        int[] expected = new int[values.length];
+        for (int p = 0; p < values.length; p++) {
+            for (int pos : LinearSearch.search(sa.text, patterns.get(p))) {
+                expected[p]++;
+            }
+        }
+        stopwatch.finished(String.format("Searching for %d patterns one at a time", values.length));
+        AhoCorasick automaton = new AhoCorasick(patterns);
+        int[] counts = new int[values.length];
+        int[][] positions = new int[values.length][];
+        automaton.findAll(sa.text, 3, counts, positions);
+        stopwatch.finished(String.format("Searching for %d patterns at once (%d states)", values.length, automaton.numStates()));
+        for (int p = 0; p < values.length; p++) {
+            System.out.format("%-12s %8d matches, first at %s\n", values[p], counts[p], Arrays.toString(positions[p]));
+            if (counts[p] != expected[p]) {
+                throw new AssertionError("Aho-Corasick gives a different result for " + values[p]);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searching for many strings at once.
+ *
+ * The queries are sorted, and then resolved in one sweep over the index:
+ * the matches of a query can never come before the matches of the previous
+ * (smaller) query, so each search starts where the previous one ended,
+ * and gallops forward instead of doing a binary search over the whole index.
+ *
+ * The sorted queries are split into blocks, and each block is swept
+ * by a separate thread.
+ */
+public class BatchSearch {
+    static final int BLOCKS_PER_THREAD = 4;
+
+    // Returns the ranges [first, last) of the index where the suffixes start with each query.
+    public static int[][] searchRanges(SuffixArray sa, List<String> queries, int threads)
+        throws InterruptedException
+    {
+        int numQueries = queries.size();
+        byte[][] keys = new byte[numQueries][];
+        for (int i = 0; i < numQueries; i++) {
+            keys[i] = queries.get(i).getBytes(SuffixArray.ENCODING);
+        }
+        // The byte order of the keys is the same as the order of the suffixes.
+        Integer[] order = new Integer[numQueries];
+        for (int i = 0; i < numQueries; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing((Integer i) -> keys[i], Arrays::compareUnsigned));
+
+        int[][] ranges = new int[numQueries][];
+        int numBlocks = Math.max(1, Math.min(numQueries, threads * BLOCKS_PER_THREAD));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> blocks = new ArrayList<>();
+            for (int b = 0; b < numBlocks; b++) {
+                int start = (int) ((long) b * numQueries / numBlocks);
+                int end = (int) ((long) (b + 1) * numQueries / numBlocks);
+                blocks.add(executor.submit(() -> sweep(sa, keys, order, start, end, ranges)));
+            }
+            for (Future<?> block : blocks) {
+                block.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        return ranges;
+    }
+
+    // Resolves the sorted queries order[start...end-1].
+    private static void sweep(SuffixArray sa, byte[][] keys, Integer[] order, int start, int end, int[][] ranges) {
+        if (sa.fmIndex != null) {
+            // The FM-index finds each range in O(m) time anyway.
+            for (int k = start; k < end; k++) {
+                ranges[order[k]] = sa.fmIndex.searchRange(keys[order[k]]);
+            }
+            return;
+        }
+        SuffixIndex index = sa.searchIndex();
+        int lo = 0;
+        byte[] previous = null;
+        for (int k = start; k < end; k++) {
+            byte[] key = keys[order[k]];
+            if (previous != null) {
+                int[] previousRange = ranges[order[k - 1]];
+                // If the previous key is a prefix of this one, the matches are
+                // within the previous range, otherwise they are after it.
+                boolean isPrefix = previous.length <= key.length
+                    && Arrays.equals(previous, 0, previous.length, key, 0, previous.length);
+                lo = isPrefix ? previousRange[0] : previousRange[1];
+            }
+            int first, last;
+            if (sa.bucketTable != null && sa.bucketTable.isExact(key)) {
+                int[] bucket = sa.bucketTable.range(key);
+                first = bucket[0];
+                last = bucket[1];
+            } else {
+                if (sa.bucketTable != null) {
+                    lo = Math.max(lo, sa.bucketTable.range(key)[0]);
+                }
+                first = gallop(sa, index, key, lo, false);
+                last = gallop(sa, index, key, first, true);
+            }
+            ranges[order[k]] = new int[] {first, last};
+            previous = key;
+        }
+    }
+
+    // Returns the first row >= lo whose suffix is >= key (or > key, if `after` is true).
+    // We double the step size until we pass the row, and then do a binary search.
+    static int gallop(SuffixArray sa, SuffixIndex index, byte[] key, int lo, boolean after) {
+        int n = index.size();
+        int step = 1;
+        int hi = lo;
+        while (hi < n && before(sa, index.get(hi), key, after)) {
+            lo = hi + 1;
+            hi = (int) Math.min(n, (long) hi + step);
+            step *= 2;
+        }
+        // Now all rows before lo are before the key, and hi is not (or hi == n).
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (before(sa, index.get(mid), key, after)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean before(SuffixArray sa, int suffix, byte[] key, boolean after) {
+        int cmp = sa.compareSuffixToValue(suffix, key);
+        return after ? cmp <= 0 : cmp < 0;
+    }
+
+    // Writes one line per query, see `formatResult`.
+    public static void writeResults(SuffixArray sa, List<String> queries, int[][] ranges, int numMatches, Path file)
+        throws IOException
+    {
+        try (Writer writer = new BufferedWriter(Files.newBufferedWriter(file, SuffixArray.ENCODING))) {
+            for (int i = 0; i < queries.size(); i++) {
+                writer.write(formatResult(sa, queries.get(i), ranges[i][0], ranges[i][1], numMatches));
+                writer.write('\n');
+            }
+        }
+    }
+
+    // Returns the query, the number of matches in the rows [first, last), and the
+    // text positions of the first `numMatches` matches, separated by tabs and commas.
+    // In a corpus, the positions are "name:offset" within each document.
+    public static String formatResult(SuffixArray sa, String query, int first, int last, int numMatches) {
+        StringBuilder result = new StringBuilder();
+        result.append(query.replace("\\", "\\\\").replace("\t", "\\t"));
+        result.append('\t').append(last - first).append('\t');
+        int shown = 0;
+        for (int pos : SearchIndex.indexResults(sa, first, Math.min(last, first + numMatches))) {
+            if (shown++ > 0) {
+                result.append(',');
+            }
+            result.append(sa.documents != null ? sa.documents.location(pos) : String.valueOf(pos));
+        }
+        return result.toString();
+    }
+}
@@ -4,27 +4,87 @@ import java.io.IOException;
 public class BinarySearch {
 
     public static int binarySearchFirst(SuffixArray sa, String value) {
-        int[] index = sa.index;
+        SuffixIndex index = sa.searchIndex();
+        byte[] key = value.getBytes(SuffixArray.ENCODING);
+        if (sa.lcpArray != null) {
+            return sa.lcpArray.binarySearchFirst(sa, key);
+        }
         
         int result = -1;
         //---------- TASK 4: Binary search returning the first index ----------//
         int lo = 0;
-        int hi = index.length - 1;
+        int hi = index.size() - 1;
         
         while (lo < hi) {
             int mid = (lo + hi)/2;
-            if (sa.compareSuffixToValue(index[mid], value) < 0) {
+            if (sa.compareSuffixToValue(index.get(mid), key) < 0) {
                 lo = mid + 1;
             } else {
                 hi = mid;
             }
         }
-        if (sa.compareSuffixToValue(index[lo], value) == 0) result = lo;
+        if (lo < index.size() && sa.compareSuffixToValue(index.get(lo), key) == 0) result = lo;
         //---------- END TASK 4 -----------------------------------------------//
 
         return result;
     }
 
+    // Returns the first index in the range [lo, hi) whose suffix is >= the key
+    // (or hi if there is none). This is the start of the matches, if there are any.
+    public static int binarySearchFirst(SuffixArray sa, byte[] key, int lo, int hi) {
+        SuffixIndex index = sa.searchIndex();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sa.compareSuffixToValue(index.get(mid), key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the index *after* the last suffix that starts with the value,
+    // so that [binarySearchFirst, binarySearchLast) is the range of all matches.
+    public static int binarySearchLast(SuffixArray sa, String value) {
+        return binarySearchLast(sa, value.getBytes(SuffixArray.ENCODING), 0, sa.searchIndex().size());
+    }
+
+    // The same, but only searching in the range [lo, hi).
+    public static int binarySearchLast(SuffixArray sa, byte[] key, int lo, int hi) {
+        SuffixIndex index = sa.searchIndex();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sa.compareSuffixToValue(index.get(mid), key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns the range [first, last) of all suffixes that start with the value.
+    // This takes two binary searches, regardless of how many matches there are.
+    // With a bucket table, the two binary searches are only within the bucket of the value.
+    public static int[] binarySearchRange(SuffixArray sa, String value) {
+        if (sa.bucketTable != null) {
+            byte[] key = value.getBytes(SuffixArray.ENCODING);
+            int[] bucket = sa.bucketTable.range(key);
+            if (sa.bucketTable.isExact(key)) {
+                return bucket;
+            }
+            int first = binarySearchFirst(sa, key, bucket[0], bucket[1]);
+            return new int[] {first, binarySearchLast(sa, key, first, bucket[1])};
+        }
+        int first = binarySearchFirst(sa, value);
+        if (first < 0) {
+            return new int[] {0, 0};
+        }
+        byte[] key = value.getBytes(SuffixArray.ENCODING);
+        return new int[] {first, binarySearchLast(sa, key, first, sa.searchIndex().size())};
+    }
+
     public static void main(String[] args) throws IOException {
         SuffixArray sa = new SuffixArray();
         SuffixSorter sorter = new Quicksort(sa);
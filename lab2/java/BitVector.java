@@ -0,0 +1,65 @@
+
+/**
+ * A fixed-size bit vector with constant-time rank queries.
+ * Call `buildRanks` after setting the bits, and before using `rank1` or `rank0`.
+ */
+class BitVector {
+    // We store the number of ones before every block of 8 words (512 bits).
+    static final int WORDS_PER_BLOCK = 8;
+
+    final int size;
+    final long[] words;
+    int[] blockRanks;
+
+    BitVector(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    BitVector(int size, long[] words) {
+        this.size = size;
+        this.words = words;
+        this.buildRanks();
+    }
+
+    public void set(int i) {
+        this.words[i >>> 6] |= 1L << (i & 63);
+    }
+
+    public boolean get(int i) {
+        return (this.words[i >>> 6] & (1L << (i & 63))) != 0;
+    }
+
+    public void buildRanks() {
+        this.blockRanks = new int[this.words.length / WORDS_PER_BLOCK + 1];
+        int rank = 0;
+        for (int w = 0; w < this.words.length; w++) {
+            if (w % WORDS_PER_BLOCK == 0) {
+                this.blockRanks[w / WORDS_PER_BLOCK] = rank;
+            }
+            rank += Long.bitCount(this.words[w]);
+        }
+        // If the words fill whole blocks, rank1(size) uses the entry after the last block.
+        if (this.words.length % WORDS_PER_BLOCK == 0) {
+            this.blockRanks[this.words.length / WORDS_PER_BLOCK] = rank;
+        }
+    }
+
+    // The number of ones in positions [0...i-1].
+    public int rank1(int i) {
+        int w = i >>> 6;
+        int rank = this.blockRanks[w / WORDS_PER_BLOCK];
+        for (int j = w - w % WORDS_PER_BLOCK; j < w; j++) {
+            rank += Long.bitCount(this.words[j]);
+        }
+        if ((i & 63) != 0) {
+            rank += Long.bitCount(this.words[w] & (-1L >>> (64 - (i & 63))));
+        }
+        return rank;
+    }
+
+    // The number of zeros in positions [0...i-1].
+    public int rank0(int i) {
+        return i - rank1(i);
+    }
+}
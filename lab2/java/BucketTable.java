@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A bucket table: for every string of `depth` bytes, the range of the index
+ * where the suffixes start with that string.
+ *
+ * Binary search can then start from the range of the first `depth` bytes
+ * of the search value instead of the whole index. The ranges are small,
+ * so the first (and most cache-unfriendly) steps of the binary search are
+ * replaced by a single table lookup. Search values of at most `depth` bytes
+ * are answered by the table alone.
+ *
+ * The table is built by `BuildIndex` and stored next to the index file,
+ * in the same format (see `IndexFile`). It has 256^depth + 1 entries,
+ * so the depth can be at most 3.
+ */
+public class BucketTable {
+    static final int MAX_DEPTH = 3;
+
+    int depth;
+    SuffixIndex starts;  // starts[p] = the first index whose suffix has a prefix >= p
+
+    public BucketTable(SuffixIndex starts) throws IOException {
+        this.starts = starts;
+        this.depth = 0;
+        while (this.depth < MAX_DEPTH && (1 << (8 * this.depth)) + 1 < starts.size()) {
+            this.depth++;
+        }
+        if ((1 << (8 * this.depth)) + 1 != starts.size()) {
+            throw new IOException(String.format("The bucket table has the wrong size, %d", starts.size()));
+        }
+    }
+
+    public static BucketTable load(Path file, SuffixArray sa) throws IOException {
+        return new BucketTable(IndexFile.map(file, sa));
+    }
+
+    // Returns the depth of a saved bucket table, from the number of entries in the file.
+    // This works even if the table was built from an older version of the text.
+    public static int depth(Path file) throws IOException {
+        long size = (Files.size(file) - IndexFile.HEADER_SIZE) / Integer.BYTES;
+        for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+            if ((1L << (8 * depth)) + 1 == size) {
+                return depth;
+            }
+        }
+        throw new IOException(String.format("The bucket table '%s' has the wrong size, %d", file, size));
+    }
+
+    // Builds the table by counting the prefixes of all suffixes; the index is not needed for this.
+    // Suffixes shorter than the depth are padded with 0 bytes, so they count as the
+    // first suffixes of their bucket, which is where they come in the index too.
+    public static int[] build(SuffixArray sa, int depth) {
+        int numBuckets = 1 << (8 * depth);
+        int mask = numBuckets - 1;
+        int[] starts = new int[numBuckets + 1];
+        int prefix = 0;
+        int n = sa.size();
+        for (int i = 0; i < n + depth - 1; i++) {
+            prefix = ((prefix << 8) | (i < n ? sa.text[i] & 0xFF : 0)) & mask;
+            if (i >= depth - 1) {
+                starts[prefix + 1]++;
+            }
+        }
+        for (int p = 0; p < numBuckets; p++) {
+            starts[p + 1] += starts[p];
+        }
+        return starts;
+    }
+
+    // Returns a range [first, last) of the index that contains all suffixes that start with the key.
+    public int[] range(byte[] key) {
+        int length = Math.min(key.length, this.depth);
+        int prefix = 0;
+        for (int i = 0; i < length; i++) {
+            prefix = (prefix << 8) | (key[i] & 0xFF);
+        }
+        int shift = 8 * (this.depth - length);
+        return new int[] {this.starts.get(prefix << shift), this.starts.get((prefix + 1) << shift)};
+    }
+
+    // Returns true if `range` contains exactly the suffixes that start with the key.
+    // This is the case for short keys, except if they contain 0 bytes, because
+    // then their bucket can also contain suffixes that were padded with 0 bytes.
+    public boolean isExact(byte[] key) {
+        if (key.length > this.depth) {
+            return false;
+        }
+        for (byte b : key) {
+            if (b == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
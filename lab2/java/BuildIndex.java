@@ -1,16 +1,26 @@
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class BuildIndex {
 
     static Map<String, Function<SuffixArray, SuffixSorter>> suffixSorters = Map.of(
         "insertion", InsertionSort::new,
         "quicksort", Quicksort::new,
+        "introsort", IntroQuicksort::new,
         "multikey", MultikeyQuicksort::new,
-        "builtin", BuiltinSort::new
+        "cached-multikey", CachedMultikeyQuicksort::new,
+        "parallel-multikey", ParallelMultikeyQuicksort::new,
+        "builtin", BuiltinSort::new,
+        "builtin-primitive", PrimitiveSort::new,
+        "sais", InducedSort::new
     );
 
     static Map<String, PivotSelector> pivotSelectors = Map.of(
@@ -29,16 +39,84 @@ public class BuildIndex {
             .makeRequired().setChoices(suffixSorters.keySet());
         parser.addArgument("--pivot", "-p", "pivot selectors (only for quicksort algorithms)")
             .setChoices(pivotSelectors.keySet());
+        parser.addArgument("--corpus", "-C", "files (or directories of files) to write to the text file as separate documents")
+            .makeList();
+        parser.addArgument("--memory-budget", "-M", "build the index in chunks of at most this many megabytes (default: 0 = all in memory)")
+            .makeInteger().setDefault(0);
+        parser.addArgument("--append", "-A", "only sort the text that was added to the end of the text file since the index was built (and rebuild its LCP array, bucket table and FM-index)")
+            .makeTrueOption();
+        parser.addArgument("--words", "-W", "only index the suffixes that start a word, for searching words and phrases")
+            .makeTrueOption();
+        parser.addArgument("--large", "-L", "the text is larger than 2GB (only with the builtin-primitive algorithm, and without LCP array, etc.)")
+            .makeTrueOption();
+        parser.addArgument("--packed", "-P", "write the index with only as many bits per entry as needed (ceil(log2 n) instead of 32)")
+            .makeTrueOption();
+        parser.addArgument("--metrics", "-S", "count comparisons, swaps, etc. while sorting, and print a summary")
+            .makeTrueOption();
+        parser.addArgument("--lcp", "-l", "also build the LCP-LR arrays (from the LCP array), for faster searching")
+            .makeTrueOption();
+        parser.addArgument("--buckets", "-b", "also build a bucket table for prefixes of this many bytes, for faster searching (1-3, default: 0 = none)")
+            .makeInteger().setDefault(0);
+        parser.addArgument("--fm-index", "-m", "also build the FM-index, for searching without the index")
+            .makeTrueOption();
 
         CommandParser.Namespace options = parser.parseArgs(args);
 
+        int bucketDepth = options.getInteger("buckets");
+        if (bucketDepth > BucketTable.MAX_DEPTH) {
+            System.err.format("\nERROR: the bucket table can have a depth of at most %d.\n\n", BucketTable.MAX_DEPTH);
+            System.exit(1);
+        }
+        if (options.getBoolean("words") && (options.getBoolean("append") || options.getBoolean("lcp")
+                || options.getBoolean("fm-index") || bucketDepth > 0 || options.getBoolean("large"))) {
+            // These all need the suffixes at every position.
+            System.err.println("\nERROR: a word index cannot be appended to, or have an LCP array, bucket table or FM-index.\n");
+            System.exit(1);
+        }
+        if (options.getBoolean("append") && options.getInteger("memory-budget") > 0) {
+            System.err.println("\nERROR: the index cannot be appended to with a memory budget.\n");
+            System.exit(1);
+        }
+
+        if (options.getBoolean("large")) {
+            buildLargeIndex(options);
+            return;
+        }
+
         // Create stopwatches to time the execution of each phase of the program.
         Stopwatch stopwatchTotal = new Stopwatch();
         Stopwatch stopwatch = new Stopwatch();
 
-        // Read the text file.
+        // Write the documents of the corpus to the text file.
         String textFile = options.getString("textfile");
         SuffixArray suffixArray = new SuffixArray();
+        List<String> corpus = options.getStringList("corpus");
+        DocumentTable documents = null;
+        if (corpus != null && !corpus.isEmpty()) {
+            if (textFile.endsWith(".gz")) {
+                System.err.println("\nERROR: a corpus cannot be written to a compressed text file.\n");
+                System.exit(1);
+            }
+            try {
+                documents = new DocumentTable();
+                if (options.getBoolean("append")) {
+                    // Add the new documents to the old ones.
+                    suffixArray.loadText(textFile);
+                    suffixArray.loadDocuments();
+                    documents = suffixArray.documents;
+                }
+                documents.addFiles(corpusFiles(corpus, Path.of(textFile)), Path.of(textFile), options.getBoolean("append"));
+            } catch (NoSuchFileException e) {
+                System.err.format("\nERROR: I cannot find the file '%s'.\n\n", e.getFile());
+                System.exit(1);
+            } catch (IOException e) {
+                System.err.format("\nERROR: %s.\n\n", e.getMessage());
+                System.exit(1);
+            }
+            stopwatch.finished(String.format("Writing %d documents to '%s'", documents.size(), textFile));
+        }
+
+        // Read the text file.
         try {
             suffixArray.loadText(textFile);
         } catch (NoSuchFileException e) {
@@ -46,7 +124,16 @@ public class BuildIndex {
                 "Make sure you specify both the directory and the filename correctly.\n\n", textFile);
             System.exit(1);
         }
-        stopwatch.finished(String.format("Reading %s chars from '%s'", suffixArray.size(), textFile));
+        stopwatch.finished(suffixArray.loadTextTask(), suffixArray.size());
+
+        // Save the document table, now that we know the text.
+        if (documents != null) {
+            documents.save(suffixArray.documentsFile, suffixArray);
+            stopwatch.finished(String.format("Saving document table to '%s'", suffixArray.documentsFile));
+        }
+
+        suffixArray.packedIndex = options.getBoolean("packed");
+        suffixArray.sparseIndex = options.getBoolean("words");
 
         // Select sorting algorithm.
         Function<SuffixArray, SuffixSorter> sortingAlgorithm = suffixSorters.get(options.getString("algorithm"));
@@ -54,21 +141,183 @@ public class BuildIndex {
         if (options.getString("pivot") != null) {
             sorter.setPivotSelector(pivotSelectors.get(options.getString("pivot")));
         }
+        if (suffixArray.sparseIndex && !sorter.canSortSubsets()) {
+            System.err.format("\nERROR: the %s algorithm cannot build a word index.\n\n", options.getString("algorithm"));
+            System.exit(1);
+        }
+
+        // Only the sorting is counted, not the checking afterwards.
+        boolean metrics = options.getBoolean("metrics");
+        if (metrics) {
+            SortMetrics.start();
+        }
+
+        int memoryBudget = options.getInteger("memory-budget");
+        if (memoryBudget > 0) {
+            // Build the index in sorted chunks, and merge them directly into the index file.
+            if (!sorter.canSortSubsets()) {
+                System.err.format("\nERROR: the %s algorithm cannot build the index in chunks.\n\n", options.getString("algorithm"));
+                System.exit(1);
+            }
+            new ExternalSort(sorter, (long) memoryBudget << 20).buildIndex();
+            stopwatch.finished(String.format("Building index with a memory budget of %d MB, and saving it to '%s'",
+                                             memoryBudget, suffixArray.indexFile));
+            if (metrics) {
+                printMetrics(options.getString("algorithm"), suffixArray);
+            }
+
+            // Check that it's sorted, using the index file.
+            suffixArray.mappedIndex = IndexFile.map(suffixArray.indexFile, suffixArray);
+            sorter.checkIndex();
+            stopwatch.finished("Checking index");
+        } else if (options.getBoolean("append")) {
+            // Merge the suffixes of the new text into the old index.
+            try {
+                int oldSize = (int) IndexFile.textLength(suffixArray.indexFile);
+                if (oldSize > suffixArray.size()) {
+                    throw new IOException(String.format(
+                        "The index file '%s' was built from a longer text", suffixArray.indexFile
+                    ));
+                }
+                SuffixIndex oldIndex = IndexFile.map(suffixArray.indexFile, suffixArray, oldSize);
+                sorter.appendIndex(oldSize, oldIndex);
+                stopwatch.finished(String.format("Appending %d bytes to the index of %d bytes",
+                                                 suffixArray.size() - oldSize, oldSize));
+                if (metrics) {
+                    printMetrics(options.getString("algorithm"), suffixArray);
+                }
+            } catch (NoSuchFileException e) {
+                System.err.format("\nERROR: I cannot find the index file '%s'.\n" +
+                    "Make sure you build the index before appending to it.\n\n", suffixArray.indexFile);
+                System.exit(1);
+            } catch (IOException e) {
+                System.err.format("\nERROR: %s.\n" +
+                    "New text can only be added to the end of the text file.\n\n", e.getMessage());
+                System.exit(1);
+            }
+            checkAndSaveIndex(sorter, stopwatch);
+        } else {
+            // Build the index using the selected sorting algorithm.
+            sorter.buildIndex();
+            stopwatch.finished(suffixArray.sparseIndex
+                               ? String.format("Building word index of %d suffixes", suffixArray.index.length)
+                               : "Building index");
+            if (metrics) {
+                printMetrics(options.getString("algorithm"), suffixArray);
+            }
+            checkAndSaveIndex(sorter, stopwatch);
+        }
+
+        // The LCP array, bucket table and FM-index of the old text don't match the new text,
+        // so when appending we rebuild the ones that exist.
+        boolean buildLcp = options.getBoolean("lcp");
+        boolean buildFmIndex = options.getBoolean("fm-index");
+        if (options.getBoolean("append")) {
+            buildLcp |= Files.exists(suffixArray.lcpLeftFile);
+            buildFmIndex |= Files.exists(suffixArray.fmIndexFile);
+            if (bucketDepth == 0 && Files.exists(suffixArray.bucketFile)) {
+                bucketDepth = BucketTable.depth(suffixArray.bucketFile);
+            }
+        }
 
-        // Build the index using the selected sorting algorithm.
-        sorter.buildIndex();
-        stopwatch.finished("Building index");
- 
+        // Build the LCP-LR arrays and save them next to the index.
+        if (buildLcp) {
+            // Only the LCP-LR arrays are saved, since they are what the search uses.
+            int[][] lcpLR = LcpArray.lcpLR(LcpArray.kasai(suffixArray));
+            IndexFile.write(suffixArray.lcpLeftFile, lcpLR[0], suffixArray);
+            IndexFile.write(suffixArray.lcpRightFile, lcpLR[1], suffixArray);
+            stopwatch.finished(String.format("Building LCP-LR arrays and saving them to '%s' and '%s'",
+                                             suffixArray.lcpLeftFile, suffixArray.lcpRightFile));
+        }
+
+        // Build the bucket table and save it next to the index.
+        if (bucketDepth > 0) {
+            IndexFile.write(suffixArray.bucketFile, BucketTable.build(suffixArray, bucketDepth), suffixArray);
+            stopwatch.finished(String.format("Building bucket table and saving it to '%s'", suffixArray.bucketFile));
+        }
+
+        // Build the FM-index and save it next to the index.
+        if (buildFmIndex) {
+            FmIndex.build(suffixArray, FmIndex.SAMPLE_RATE).save(suffixArray.fmIndexFile, suffixArray);
+            stopwatch.finished(String.format("Building FM-index and saving it to '%s'", suffixArray.fmIndexFile));
+        }
+
+        stopwatchTotal.finished("In total the program");
+    }
+
+    // Returns the files, and all files in the directories (in order), except for the text file
+    // and the files that belong to it, in case these are in the corpus directory too.
+    private static List<Path> corpusFiles(List<String> corpus, Path textFile) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String name : corpus) {
+            try (Stream<Path> paths = Files.walk(Path.of(name))) {
+                paths.filter(Files::isRegularFile)
+                    .filter(file -> !belongsToTextFile(file, textFile))
+                    .sorted()
+                    .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    private static boolean belongsToTextFile(Path file, Path textFile) {
+        String path = file.toAbsolutePath().normalize().toString();
+        String text = textFile.toAbsolutePath().normalize().toString();
+        return path.equals(text) || path.startsWith(text + ".");
+    }
+
+    // Builds the index of a text that is too large for a `SuffixArray`.
+    private static void buildLargeIndex(CommandParser.Namespace options) throws IOException {
+        if (!options.getString("algorithm").equals("builtin-primitive")) {
+            System.err.println("\nERROR: a large text can only be sorted with the builtin-primitive algorithm.\n");
+            System.exit(1);
+        }
+        if (options.getBoolean("append") || options.getBoolean("lcp") || options.getBoolean("fm-index")
+                || options.getInteger("buckets") > 0 || options.getStringList("corpus") != null) {
+            System.err.println("\nERROR: for a large text, only the index can be built.\n");
+            System.exit(1);
+        }
+        Stopwatch stopwatchTotal = new Stopwatch();
+        Stopwatch stopwatch = new Stopwatch();
+
+        String textFile = options.getString("textfile");
+        LargeSuffixArray suffixArray = new LargeSuffixArray();
+        try {
+            suffixArray.loadText(textFile);
+        } catch (NoSuchFileException e) {
+            System.err.format("\nERROR: I cannot find the text file '%s'.\n" +
+                "Make sure you specify both the directory and the filename correctly.\n\n", textFile);
+            System.exit(1);
+        }
+        stopwatch.finished(String.format("Mapping %s bytes from '%s'", suffixArray.size(), textFile));
+
+        // Without a memory budget, we use half of the heap.
+        long memoryBudget = options.getInteger("memory-budget") > 0
+            ? (long) options.getInteger("memory-budget") << 20
+            : Runtime.getRuntime().maxMemory() / 2;
+        suffixArray.buildIndex(memoryBudget);
+        stopwatch.finished(String.format("Building index with a memory budget of %d MB, and saving it to '%s'",
+                                         memoryBudget >> 20, suffixArray.indexFile));
+
+        suffixArray.loadIndex();
+        suffixArray.checkIndex();
+        stopwatch.finished("Checking index");
+        stopwatchTotal.finished("In total the program");
+    }
+
+    private static void printMetrics(String algorithm, SuffixArray sa) {
+        SortMetrics.stop(algorithm, sa.size());
+        System.out.format("Sorting metrics (%s):\n%s", algorithm, SortMetrics.summary());
+    }
+
+    private static void checkAndSaveIndex(SuffixSorter sorter, Stopwatch stopwatch) throws IOException {
         // Check that it's sorted.
         sorter.checkIndex();
         stopwatch.finished("Checking index");
 
         // Save it to an index file.
         sorter.saveIndex();
-        stopwatch.finished(String.format("Saving index to '%s'", suffixArray.indexFile));
-
-        stopwatchTotal.finished("In total the program");
+        stopwatch.finished(String.format("Saving index to '%s'", sorter.sa.indexFile));
     }
 
 }
-
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+// Multikey quicksort with cached keys, after Rantala's "caching" variants
+// of string sorting algorithms.
+//
+// The plain multikey quicksort reads one text byte per suffix and partitioning step,
+// which is a random access into the text (and a cache miss for large texts).
+// Instead, we keep an array `keys` next to the index, where keys[i] holds the next
+// few bytes of the suffix index[i] packed into a long. Partitioning then only reads
+// the two arrays sequentially, and compares several bytes at once. The keys of a range
+// are only reloaded from the text when the range moves on to the next bytes.
+//
+// Each byte is stored as a 9-bit symbol (byte + 1), so that the end of the text (0)
+// sorts before all bytes, including the 0 byte. Seven symbols fit in 63 bits,
+// so the keys are non-negative and can be compared as longs.
+//
+// This uses 8 bytes of extra memory per suffix.
+
+class CachedMultikeyQuicksort extends SuffixSorter {
+    static final int BITS_PER_SYMBOL = 9;
+    static final int SYMBOLS_PER_KEY = 7;
+
+    ProgressBar<Void> progressBar;
+    int progressBarSpanSize;
+    long[] keys;
+
+    CachedMultikeyQuicksort(SuffixArray sa) {
+        super(sa);
+    }
+
+    CachedMultikeyQuicksort(SuffixArray sa, PivotSelector pivotSelector) {
+        super(sa, pivotSelector);
+    }
+
+    @Override
+    public boolean usesPivotSelector() {
+        return true;
+    }
+
+    public void sortIndex() {
+        int size = this.sa.index.length;
+        this.progressBarSpanSize = size / 10_000;
+        this.progressBar = new ProgressBar<>(size, "Cached multikey sorting");
+        this.keys = new long[size];
+        this.loadKeys(0, size, 0);
+        this.multikeyQuicksort(0, size, 0);
+        this.keys = null;
+        this.progressBar.setValue(size);
+        this.progressBar.close();
+    }
+
+    // Loads the keys of the range [start...end-1], for the bytes from `offset` on.
+    private void loadKeys(int start, int end, int offset) {
+        byte[] text = this.sa.text;
+        int n = text.length;
+        SortMetrics.characters((end - start) * SYMBOLS_PER_KEY);
+        for (int i = start; i < end; i++) {
+            int pos = this.sa.index[i] + offset;
+            long key = 0;
+            for (int k = 0; k < SYMBOLS_PER_KEY; k++, pos++) {
+                key = (key << BITS_PER_SYMBOL) | (pos < n ? (text[pos] & 0xFF) + 1 : 0);
+            }
+            this.keys[i] = key;
+        }
+    }
+
+    public void multikeyQuicksort(int start, int end, int offset) {
+        // The suffixes with equal keys are sorted by the next key, in the same loop.
+        // This keeps the recursion shallow for repetitive texts, where that range is the largest.
+        SortMetrics.enter();
+        while (end - start > 1) {
+            // Don't update the progress bar unnecessarily often.
+            if (end - start >= progressBarSpanSize) {
+                this.progressBar.setValue(start);
+            }
+
+            MultikeyQuicksort.IndexPair middle = partition(start, end);
+            multikeyQuicksort(start, middle.start, offset);
+            multikeyQuicksort(middle.end, end, offset);
+
+            // If the key contains the end of the text, there is only one such suffix.
+            if ((this.keys[middle.start] & ((1L << BITS_PER_SYMBOL) - 1)) == 0) {
+                break;
+            }
+            start = middle.start;
+            end = middle.end;
+            offset += SYMBOLS_PER_KEY;
+            if (end - start > 1) {
+                this.loadKeys(start, end, offset);
+            }
+        }
+        SortMetrics.exit();
+    }
+
+    // Three-way partitioning of the range by the keys, as in `MultikeyQuicksort.partition`.
+    public MultikeyQuicksort.IndexPair partition(int start, int end) {
+        int pivotIndex = pivotSelector.pivotIndex(this.sa, start, end);
+        long pivotKey = this.keys[pivotIndex];
+        int middleStart = start;
+        int middleEnd = end;
+        int i = start;
+        while (i < middleEnd) {
+            long key = this.keys[i];
+            if (key < pivotKey) {
+                this.swap(i++, middleStart++);
+            } else if (key > pivotKey) {
+                this.swap(i, --middleEnd);
+            } else {
+                i++;
+            }
+        }
+        SortMetrics.partition(end - start, Math.max(middleEnd - middleStart, Math.max(middleStart - start, end - middleEnd)));
+        return new MultikeyQuicksort.IndexPair(middleStart, middleEnd);
+    }
+
+    @Override
+    public void swap(int i, int j) {
+        super.swap(i, j);
+        long tmp = this.keys[i];
+        this.keys[i] = this.keys[j];
+        this.keys[j] = tmp;
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter plain = new MultikeyQuicksort(sa);
+        SuffixSorter cached = new CachedMultikeyQuicksort(sa);
+
+        sa.setText("ABRACADABRA");
+        cached.buildIndex();
+        cached.checkIndex();
+        sa.print("ABRACADABRA");
+
+        // Compare the running time with the plain version.
+        for (String alphabet : new String[] {"ABCDEFGHIJKLMNOP", "AB"}) {
+            for (int k = 1; k < 6; k++) {
+                int size = k * 2_000_000;
+                sa.generateRandomText(size, alphabet);
+                Stopwatch stopwatch = new Stopwatch();
+                plain.buildIndex();
+                stopwatch.finished(String.format("Multikey sorting of %,d chars, alphabet: '%s'", size, alphabet));
+                int[] expected = sa.index;
+                cached.buildIndex();
+                stopwatch.finished(String.format("Cached multikey sorting of %,d chars, alphabet: '%s'", size, alphabet));
+                if (!Arrays.equals(expected, sa.index)) {
+                    throw new AssertionError("The cached sorter gives a different result");
+                }
+            }
+        }
+    }
+}
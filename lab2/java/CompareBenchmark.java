@@ -0,0 +1,109 @@
+import java.util.Random;
+
+// A micro-benchmark of `SuffixArray.compareSuffixes`, against the
+// straightforward loop that compares one byte at a time.
+// We compare neighbouring suffixes in the sorted index, since these
+// share the longest prefixes, and random pairs of suffixes.
+//
+// Note: this is a simple timing loop with warmup rounds, not a JMH benchmark,
+// so the numbers should only be used to compare the two implementations.
+
+public class CompareBenchmark {
+    static final int WARMUP_ROUNDS = 5;
+    static final int ROUNDS = 10;
+
+    // The comparison loop that compares one byte at a time.
+    static int compareSuffixesBytewise(byte[] text, int suffix1, int suffix2) {
+        if (suffix1 == suffix2) {
+            return 0;
+        }
+        int end = text.length;
+        while (suffix1 < end && suffix2 < end) {
+            int ch1 = text[suffix1] & 0xFF;
+            int ch2 = text[suffix2] & 0xFF;
+            if (ch1 != ch2) {
+                return ch1 < ch2 ? -1 : 1;
+            }
+            suffix1++;
+            suffix2++;
+        }
+        return suffix1 > suffix2 ? -1 : 1;
+    }
+
+    static int compare(SuffixArray sa, boolean bytewise, int suffix1, int suffix2) {
+        return bytewise ? compareSuffixesBytewise(sa.text, suffix1, suffix2) : sa.compareSuffixes(suffix1, suffix2);
+    }
+
+    // Runs all comparisons in some rounds, and returns the mean time per comparison in nanoseconds.
+    // (We don't pass the comparison as a lambda, because then the JIT compiler
+    // cannot inline it once it has seen more than one implementation.)
+    static double benchmark(SuffixArray sa, boolean bytewise, int[] left, int[] right) {
+        long checksum = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < left.length; i++) {
+                checksum += compare(sa, bytewise, left[i], right[i]);
+            }
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < left.length; i++) {
+                checksum += compare(sa, bytewise, left[i], right[i]);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        // Use the checksum so that the JIT compiler cannot remove the loops.
+        if (checksum == Long.MIN_VALUE) {
+            System.out.println(checksum);
+        }
+        return (double) elapsed / ROUNDS / left.length;
+    }
+
+    static void run(String description, SuffixArray sa, int numPairs) {
+        new InducedSort(sa).buildIndex();
+        Random random = new Random(42);
+        int size = sa.size();
+        int pairs = Math.min(numPairs, size - 1);
+
+        int[][] neighbours = new int[2][pairs];
+        int[][] randoms = new int[2][pairs];
+        for (int i = 0; i < pairs; i++) {
+            int k = random.nextInt(size - 1);
+            neighbours[0][i] = sa.index[k];
+            neighbours[1][i] = sa.index[k + 1];
+            randoms[0][i] = random.nextInt(size);
+            randoms[1][i] = random.nextInt(size);
+        }
+
+        for (int i = 0; i < pairs; i++) {
+            if (compare(sa, true, randoms[0][i], randoms[1][i]) != compare(sa, false, randoms[0][i], randoms[1][i]))
+                throw new AssertionError("The comparison methods give different results");
+        }
+
+        System.out.format("--- %s, size: %,d %s%n", description, size, "-".repeat(Math.max(0, 60 - description.length())));
+        System.out.format("  neighbours:  bytewise %8.1f ns   mismatch %8.1f ns%n",
+            benchmark(sa, true, neighbours[0], neighbours[1]),
+            benchmark(sa, false, neighbours[0], neighbours[1]));
+        System.out.format("  random:      bytewise %8.1f ns   mismatch %8.1f ns%n",
+            benchmark(sa, true, randoms[0], randoms[1]),
+            benchmark(sa, false, randoms[0], randoms[1]));
+    }
+
+    public static void main(String[] args) {
+        ProgressBar.visible = false;
+        SuffixArray sa = new SuffixArray();
+        int size = 1_000_000;
+
+        sa.generateRandomText(size, "ABCDEFGHIJKLMNOP");
+        run("random, alphabet: 16", sa, 1_000_000);
+
+        sa.generateRandomText(size, "AB");
+        run("random, alphabet: 2", sa, 1_000_000);
+
+        // A highly repetitive text: the same random block over and over again.
+        // Neighbouring suffixes share prefixes of up to the whole text,
+        // so we use much fewer pairs.
+        sa.generateRandomText(1000, "ABCD");
+        sa.setText(new String(sa.text, SuffixArray.ENCODING).repeat(size / 1000));
+        run("repeated block of 1000", sa, 1_000);
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A table of the documents in a corpus: many files that are indexed as one text.
+ *
+ * The documents are concatenated into one text file, separated by a 0 byte,
+ * so that no match of a normal search string can span two documents.
+ * The table stores the name and the start position of each document,
+ * and finds the document of a text position by binary search.
+ *
+ * It is stored next to the index file:
+ *
+ *   bytes 0-3     magic number "SADT"
+ *   bytes 4-7     format version
+ *   bytes 8-15    length of the text
+ *   bytes 16-23   CRC-32 checksum of the text
+ *   bytes 24-27   number of documents
+ *   then          the start position of each document (little-endian ints)
+ *   then          the name of each document (a little-endian int length, and the utf-8 encoded name)
+ */
+public class DocumentTable {
+    static final int MAGIC = 0x54444153;  // "SADT" when read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 28;
+    static final byte SEPARATOR = 0;
+
+    int textLength;
+    int size;
+    int[] starts = new int[16];
+    List<String> names = new ArrayList<>();
+
+    public int size() {
+        return this.size;
+    }
+
+    public String name(int doc) {
+        return this.names.get(doc);
+    }
+
+    public int start(int doc) {
+        return this.starts[doc];
+    }
+
+    // The end of the document, not including the separator.
+    public int end(int doc) {
+        return doc + 1 < this.size ? this.starts[doc + 1] - 1 : this.textLength;
+    }
+
+    // Returns the document that contains the text position.
+    public int documentOf(int pos) {
+        int doc = Arrays.binarySearch(this.starts, 0, this.size, pos);
+        doc = doc >= 0 ? doc : -doc - 2;
+        // Tables from older builds can have empty documents with the same start as the next one.
+        while (doc + 1 < this.size && this.starts[doc + 1] <= pos) {
+            doc++;
+        }
+        return doc;
+    }
+
+    // Returns the position as "name:offset", where offset is the position within its document.
+    public String location(int pos) {
+        int doc = documentOf(pos);
+        return String.format("%s:%d", this.names.get(doc), pos - this.starts[doc]);
+    }
+
+    // Returns the set of documents that contain any of the positions.
+    // Each position takes one binary search, regardless of the number of documents.
+    public BitSet documentsOf(Iterable<Integer> positions) {
+        BitSet documents = new BitSet(this.size);
+        for (int pos : positions) {
+            documents.set(documentOf(pos));
+        }
+        return documents;
+    }
+
+    // Writes the files to the end of the text file (or replaces it), and adds them to the table.
+    public void addFiles(List<Path> files, Path textFile, boolean append) throws IOException {
+        StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        long length = append ? Files.size(textFile) : 0;
+        if (!append) {
+            this.size = 0;
+            this.names.clear();
+        }
+        try (OutputStream out = Files.newOutputStream(textFile, StandardOpenOption.CREATE, mode)) {
+            for (Path file : files) {
+                // Every document except the first one starts after a separator,
+                // so the starts are increasing even if some documents are empty.
+                if (this.size > 0 || length > 0) {
+                    out.write(SEPARATOR);
+                    length++;
+                }
+                if (this.size == this.starts.length) {
+                    this.starts = Arrays.copyOf(this.starts, 2 * this.size);
+                }
+                this.starts[this.size++] = (int) length;
+                this.names.add(file.toString());
+                length += Files.copy(file, out);
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("The corpus is too large to be indexed");
+                }
+            }
+        }
+        this.textLength = (int) length;
+    }
+
+    public void save(Path file, SuffixArray sa) throws IOException {
+        byte[][] encodedNames = new byte[this.size][];
+        int length = HEADER_SIZE + this.size * Integer.BYTES;
+        for (int doc = 0; doc < this.size; doc++) {
+            encodedNames[doc] = this.names.get(doc).getBytes(SuffixArray.ENCODING);
+            length += Integer.BYTES + encodedNames[doc].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(IndexFile.BYTE_ORDER);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(sa.size()).putLong(IndexFile.checksum(sa)).putInt(this.size);
+        for (int doc = 0; doc < this.size; doc++) {
+            buffer.putInt(this.starts[doc]);
+        }
+        for (byte[] name : encodedNames) {
+            buffer.putInt(name.length).put(name);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public static DocumentTable load(Path file, SuffixArray sa) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(IndexFile.BYTE_ORDER);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(String.format("'%s' is not a document table file", file));
+        }
+        if (buffer.getLong(8) != sa.size() || buffer.getLong(16) != IndexFile.checksum(sa)) {
+            throw new IOException(String.format(
+                "The document table file '%s' was not built from the text file '%s'", file, sa.textFile
+            ));
+        }
+        DocumentTable table = new DocumentTable();
+        table.textLength = sa.size();
+        table.size = buffer.getInt(24);
+        table.starts = new int[Math.max(1, table.size)];
+        buffer.position(HEADER_SIZE);
+        buffer.asIntBuffer().get(table.starts, 0, table.size);
+        buffer.position(HEADER_SIZE + table.size * Integer.BYTES);
+        for (int doc = 0; doc < table.size; doc++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            table.names.add(new String(name, SuffixArray.ENCODING));
+        }
+        return table;
+    }
+}
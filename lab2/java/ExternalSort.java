@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Building the index when it doesn't fit in memory.
+ *
+ * The suffixes are split into chunks of consecutive text positions,
+ * and each chunk is sorted by a normal suffix sorter and written to
+ * a temporary file (a "run"). Then all runs are merged into the index file,
+ * by repeatedly taking the smallest suffix among the first ones of all runs.
+ *
+ * The memory budget is for the index only: the text itself must still fit
+ * in memory, since all comparisons look at the text. But the index takes
+ * 4 bytes per text byte, so this makes it possible to index texts that are
+ * several times larger than before.
+ */
+public class ExternalSort {
+    static final int MIN_BUFFER_SIZE = 1 << 12;
+
+    private final SuffixSorter sorter;
+    private final long memoryBudget;
+
+    public ExternalSort(SuffixSorter sorter, long memoryBudget) {
+        if (!sorter.canSortSubsets()) {
+            throw new IllegalArgumentException(String.format(
+                "%s cannot sort the index in chunks", sorter.getClass().getSimpleName()
+            ));
+        }
+        this.sorter = sorter;
+        this.memoryBudget = memoryBudget;
+    }
+
+    // Builds the index and writes it to `sa.indexFile`, without keeping it in memory.
+    public void buildIndex() throws IOException {
+        SuffixArray sa = this.sorter.sa;
+        int n = sa.size();
+        int chunkSize = (int) Math.max(1, Math.min(n, this.memoryBudget / Integer.BYTES));
+
+        List<Path> runs = new ArrayList<>();
+        try {
+            for (int start = 0; start < n; start += chunkSize) {
+                int end = Math.min(n, start + chunkSize);
+                if (sa.sparseIndex) {
+                    sa.index = sa.wordStarts(start, end);
+                } else {
+                    sa.index = new int[end - start];
+                    for (int i = 0; i < sa.index.length; i++) {
+                        sa.index[i] = start + i;
+                    }
+                }
+                this.sorter.sortIndex();
+                Path run = Files.createTempFile("suffix-run-", ".tmp");
+                runs.add(run);
+                writeRun(run, sa.index);
+            }
+            sa.index = null;
+            merge(sa, runs);
+        } finally {
+            sa.index = null;
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private static void writeRun(Path file, int[] index) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IndexFile.WRITE_BUFFERSIZE).order(IndexFile.BYTE_ORDER);
+            for (int pos : index) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putInt(pos);
+            }
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Merges the sorted runs into the index file, with one read buffer per run.
+    private void merge(SuffixArray sa, List<Path> runs) throws IOException {
+        int bufferSize = (int) Math.max(MIN_BUFFER_SIZE,
+            Math.min(Integer.MAX_VALUE / 2, this.memoryBudget / (runs.size() + 1)));
+        PriorityQueue<Run> queue = new PriorityQueue<>(
+            Math.max(1, runs.size()), (a, b) -> sa.compareSuffixes(a.head, b.head)
+        );
+        List<Run> opened = new ArrayList<>();
+        ProgressBar<?> progressBar = new ProgressBar<>(sa.size(), String.format("Merging %d runs", runs.size()));
+        int progressBarInterval = sa.size() / 10_000 + 1;
+        try (IndexFile.Writer writer = new IndexFile.Writer(sa.indexFile, sa, sa.packedIndex, sa.sparseIndex)) {
+            for (Path file : runs) {
+                Run run = new Run(file, bufferSize);
+                opened.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            int written = 0;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                writer.write(run.head);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+                if (++written % progressBarInterval == 0) progressBar.setValue(written);
+            }
+        } finally {
+            for (Run run : opened) {
+                run.channel.close();
+            }
+            progressBar.setValue(sa.size());
+            progressBar.close();
+        }
+    }
+
+    // A sorted run that is read sequentially. `head` is its current smallest suffix.
+    private static class Run {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        int head;
+
+        Run(Path file, int bufferSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocateDirect(bufferSize & -Integer.BYTES).order(IndexFile.BYTE_ORDER);
+            this.buffer.flip();
+        }
+
+        // Moves to the next suffix, and returns false if the run is finished.
+        boolean advance() throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                this.buffer.clear();
+                while (this.buffer.hasRemaining()) {
+                    if (this.channel.read(this.buffer) < 0) {
+                        break;
+                    }
+                }
+                this.buffer.flip();
+                if (!this.buffer.hasRemaining()) {
+                    return false;
+                }
+            }
+            this.head = this.buffer.getInt();
+            return true;
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter sorter = new MultikeyQuicksort(sa);
+
+        // Compare with sorting everything in memory.
+        String alphabet = "ABCD";
+        int size = 2_000_000;
+        sa.generateRandomText(size, alphabet);
+        sa.indexFile = Files.createTempFile("suffix-index-", SuffixArray.INDEX_SUFFIX);
+        try {
+            Stopwatch stopwatch = new Stopwatch();
+            sorter.buildIndex();
+            stopwatch.finished(String.format("Sorting %,d suffixes in memory", size));
+            int[] expected = sa.index;
+
+            long budget = size;  // a quarter of the index
+            new ExternalSort(sorter, budget).buildIndex();
+            stopwatch.finished(String.format("Sorting %,d suffixes with a memory budget of %,d bytes", size, budget));
+            sa.loadIndex();
+            SuffixIndex index = sa.searchIndex();
+            for (int i = 0; i < size; i++) {
+                if (index.get(i) != expected[i]) {
+                    throw new AssertionError("The external sort gives a different result");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(sa.indexFile);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An FM-index (Ferragina & Manzini, 2000): a compressed self-index
+ * that can count and locate matches without the suffix array.
+ *
+ * It consists of:
+ *  - the Burrows-Wheeler transform of the text, bwt[i] = text[index[i] - 1],
+ *    stored in a wavelet matrix that can answer rank queries,
+ *  - the counts C[c] of all bytes in the text that are smaller than c,
+ *  - a sample of the suffix array: the rows whose text position is a multiple
+ *    of the sample rate, which is enough to locate every other row.
+ *
+ * Counting the matches of a string of length m takes O(m) rank queries,
+ * and locating each match takes at most `sampleRate` more.
+ * In total it uses about 1.3 bytes per text byte, instead of 4.
+ */
+public class FmIndex {
+    static final int MAGIC = 0x4D464153;  // "SAFM" when read as little-endian
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 40;
+    static final int SAMPLE_RATE = 32;
+    static final int ALPHABET_SIZE = 256;
+
+    int size;
+    int primary;          // the row of text position 0, which has no preceding byte
+    int last;             // the last byte of the text, which precedes the empty suffix
+    int sampleRate;
+    int[] counts;         // counts[c] = the number of bytes in the text that are < c
+    WaveletMatrix bwt;
+    BitVector sampled;    // which rows are sampled
+    int[] samples;        // the text positions of the sampled rows, in row order
+
+    // Builds the FM-index from a suffix array that has a sorted index.
+    public static FmIndex build(SuffixArray sa, int sampleRate) {
+        int n = sa.size();
+        FmIndex fm = new FmIndex();
+        fm.size = n;
+        fm.sampleRate = sampleRate;
+        fm.last = n > 0 ? sa.text[n - 1] & 0xFF : 0;
+        fm.counts = new int[ALPHABET_SIZE + 1];
+        for (byte b : sa.text) {
+            fm.counts[(b & 0xFF) + 1]++;
+        }
+        for (int c = 0; c < ALPHABET_SIZE; c++) {
+            fm.counts[c + 1] += fm.counts[c];
+        }
+
+        SuffixIndex index = sa.searchIndex();
+        byte[] bwt = new byte[n];
+        fm.sampled = new BitVector(n);
+        int numSamples = 0;
+        for (int i = 0; i < n; i++) {
+            int pos = index.get(i);
+            if (pos == 0) {
+                fm.primary = i;
+            } else {
+                bwt[i] = sa.text[pos - 1];
+            }
+            if (pos % sampleRate == 0) {
+                fm.sampled.set(i);
+                numSamples++;
+            }
+        }
+        fm.sampled.buildRanks();
+        fm.samples = new int[numSamples];
+        for (int i = 0, k = 0; i < n; i++) {
+            if (index.get(i) % sampleRate == 0) {
+                fm.samples[k++] = index.get(i);
+            }
+        }
+        fm.bwt = new WaveletMatrix(bwt);
+        return fm;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // The number of occurrences of c before row i, in the BWT of the text.
+    // The index has no row for the empty suffix, which would come before all
+    // other rows, so we count the byte that precedes it (the last byte) separately.
+    // Row -1 stands for this empty suffix.
+    private int occurrences(int c, int i) {
+        if (i < 0) {
+            return 0;
+        }
+        int rank = this.bwt.rank(c, i);
+        // The primary row holds a dummy 0 byte, which we must not count.
+        if (c == 0 && this.primary < i) {
+            rank--;
+        }
+        if (c == this.last) {
+            rank++;
+        }
+        return rank;
+    }
+
+    // Returns the range [first, last) of rows whose suffixes start with the key.
+    // This is the same as the range in the suffix array.
+    public int[] searchRange(byte[] key) {
+        int first = -1, last = this.size;
+        for (int k = key.length - 1; k >= 0 && first < last; k--) {
+            int c = key[k] & 0xFF;
+            first = this.counts[c] + occurrences(c, first);
+            last = this.counts[c] + occurrences(c, last);
+        }
+        first = Math.max(first, 0);
+        return new int[] {first, Math.max(first, last)};
+    }
+
+    // Returns the text position of the suffix in the given row.
+    public int locate(int row) {
+        int steps = 0;
+        // Walk backwards in the text (using the LF mapping) until we reach a sampled row.
+        // Text position 0 is always sampled, so we never have to pass the primary row.
+        while (!this.sampled.get(row)) {
+            int c = this.bwt.access(row);
+            row = this.counts[c] + occurrences(c, row);
+            steps++;
+        }
+        return this.samples[this.sampled.rank1(row)] + steps;
+    }
+
+    public void save(Path file, SuffixArray sa) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(IndexFile.BYTE_ORDER);
+            header.putInt(MAGIC).putInt(VERSION).putLong(this.size).putLong(IndexFile.checksum(sa))
+                .putInt(this.primary).putInt(this.sampleRate).putInt(this.samples.length).putInt(this.last);
+            writeFully(channel, header.flip());
+            writeInts(channel, this.counts);
+            for (int level = 0; level < WaveletMatrix.LEVELS; level++) {
+                writeLongs(channel, this.bwt.levels[level].words);
+            }
+            writeLongs(channel, this.sampled.words);
+            writeInts(channel, this.samples);
+        }
+    }
+
+    public static FmIndex load(Path file, SuffixArray sa) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(String.format("'%s' is not an FM-index file", file));
+            }
+            if (header.getLong(8) != sa.size() || header.getLong(16) != IndexFile.checksum(sa)) {
+                throw new IOException(String.format(
+                    "The FM-index file '%s' was not built from the text file '%s'", file, sa.textFile
+                ));
+            }
+            FmIndex fm = new FmIndex();
+            fm.size = sa.size();
+            fm.primary = header.getInt(24);
+            fm.sampleRate = header.getInt(28);
+            int numSamples = header.getInt(32);
+            fm.last = header.getInt(36);
+            fm.counts = readInts(channel, ALPHABET_SIZE + 1);
+            BitVector[] levels = new BitVector[WaveletMatrix.LEVELS];
+            for (int level = 0; level < levels.length; level++) {
+                levels[level] = new BitVector(fm.size, readLongs(channel, (fm.size + 63) >>> 6));
+            }
+            fm.bwt = new WaveletMatrix(levels);
+            fm.sampled = new BitVector(fm.size, readLongs(channel, (fm.size + 63) >>> 6));
+            fm.samples = readInts(channel, numSamples);
+            return fm;
+        }
+    }
+
+    // Helper methods for reading and writing arrays in chunks.
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(IndexFile.BYTE_ORDER);
+        for (int start = 0; start < values.length; start += BUFFER_SIZE / Integer.BYTES) {
+            int length = Math.min(BUFFER_SIZE / Integer.BYTES, values.length - start);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, start, length);
+            buffer.limit(length * Integer.BYTES);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeLongs(FileChannel channel, long[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(IndexFile.BYTE_ORDER);
+        for (int start = 0; start < values.length; start += BUFFER_SIZE / Long.BYTES) {
+            int length = Math.min(BUFFER_SIZE / Long.BYTES, values.length - start);
+            buffer.clear();
+            buffer.asLongBuffer().put(values, start, length);
+            buffer.limit(length * Long.BYTES);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(IndexFile.BYTE_ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Unexpected end of FM-index file");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int[] readInts(FileChannel channel, int length) throws IOException {
+        int[] values = new int[length];
+        for (int start = 0; start < length; start += BUFFER_SIZE / Integer.BYTES) {
+            int chunk = Math.min(BUFFER_SIZE / Integer.BYTES, length - start);
+            readFully(channel, chunk * Integer.BYTES).asIntBuffer().get(values, start, chunk);
+        }
+        return values;
+    }
+
+    private static long[] readLongs(FileChannel channel, int length) throws IOException {
+        long[] values = new long[length];
+        for (int start = 0; start < length; start += BUFFER_SIZE / Long.BYTES) {
+            int chunk = Math.min(BUFFER_SIZE / Long.BYTES, length - start);
+            readFully(channel, chunk * Long.BYTES).asLongBuffer().get(values, start, chunk);
+        }
+        return values;
+    }
+
+
+    public static void main(String[] args) {
+        // Compare with binary search, especially for sizes around the rank block size (512 bits).
+        String[] values = {"A", "C", "TTA", "CG", "ACGTA", "GGGG"};
+        for (int size : new int[] {1, 63, 64, 511, 512, 513, 1024, 100_000}) {
+            SuffixArray sa = new SuffixArray();
+            sa.generateRandomText(size, "ACGT");
+            new PrimitiveSort(sa).buildIndex();
+            FmIndex fm = build(sa, SAMPLE_RATE);
+            for (String value : values) {
+                int[] expected = BinarySearch.binarySearchRange(sa, value);
+                int[] range = fm.searchRange(value.getBytes(SuffixArray.ENCODING));
+                if (range[1] - range[0] != expected[1] - expected[0]) {
+                    throw new AssertionError(String.format(
+                        "The FM-index finds %d matches for '%s' in a text of size %d, instead of %d",
+                        range[1] - range[0], value, size, expected[1] - expected[0]
+                    ));
+                }
+                for (int row = range[0]; row < range[1]; row++) {
+                    if (fm.locate(row) != sa.index[row]) {
+                        throw new AssertionError("The FM-index locates a different position");
+                    }
+                }
+            }
+            System.out.format("Size %d: the FM-index gives the same results as binary search\n", size);
+        }
+    }
+
+
+    /**
+     * A wavelet matrix over bytes.
+     * Level k holds bit (7-k) of every symbol, with the symbols stably sorted
+     * by their higher bits, so access and rank take 8 bit-vector rank queries.
+     */
+    static class WaveletMatrix {
+        static final int LEVELS = 8;
+
+        BitVector[] levels;
+        int[] zeros;  // the number of zeros on each level
+
+        WaveletMatrix(byte[] symbols) {
+            int n = symbols.length;
+            this.levels = new BitVector[LEVELS];
+            byte[] current = symbols.clone();
+            byte[] next = new byte[n];
+            for (int level = 0; level < LEVELS; level++) {
+                int bit = LEVELS - 1 - level;
+                BitVector bits = new BitVector(n);
+                int numZeros = 0;
+                for (int i = 0; i < n; i++) {
+                    if ((current[i] >>> bit & 1) != 0) {
+                        bits.set(i);
+                    } else {
+                        numZeros++;
+                    }
+                }
+                // Stable partition: all zeros first, then all ones.
+                int z = 0, o = numZeros;
+                for (int i = 0; i < n; i++) {
+                    if ((current[i] >>> bit & 1) != 0) {
+                        next[o++] = current[i];
+                    } else {
+                        next[z++] = current[i];
+                    }
+                }
+                bits.buildRanks();
+                this.levels[level] = bits;
+                byte[] tmp = current;
+                current = next;
+                next = tmp;
+            }
+            this.countZeros();
+        }
+
+        WaveletMatrix(BitVector[] levels) {
+            this.levels = levels;
+            this.countZeros();
+        }
+
+        private void countZeros() {
+            this.zeros = new int[LEVELS];
+            for (int level = 0; level < LEVELS; level++) {
+                this.zeros[level] = this.levels[level].rank0(this.levels[level].size);
+            }
+        }
+
+        // The symbol at position i.
+        public int access(int i) {
+            int symbol = 0;
+            for (int level = 0; level < LEVELS; level++) {
+                BitVector bits = this.levels[level];
+                if (bits.get(i)) {
+                    symbol = symbol << 1 | 1;
+                    i = this.zeros[level] + bits.rank1(i);
+                } else {
+                    symbol = symbol << 1;
+                    i = bits.rank0(i);
+                }
+            }
+            return symbol;
+        }
+
+        // The number of occurrences of the symbol in positions [0...i-1].
+        public int rank(int symbol, int i) {
+            int start = 0;
+            for (int level = 0; level < LEVELS; level++) {
+                BitVector bits = this.levels[level];
+                if ((symbol >>> (LEVELS - 1 - level) & 1) != 0) {
+                    start = this.zeros[level] + bits.rank1(start);
+                    i = this.zeros[level] + bits.rank1(i);
+                } else {
+                    start = bits.rank0(start);
+                    i = bits.rank0(i);
+                }
+            }
+            return i - start;
+        }
+    }
+}
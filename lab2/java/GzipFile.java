@@ -0,0 +1,240 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reading gzip compressed files (RFC 1952) directly into a byte array.
+ *
+ * A gzip file consists of one or more members, each with a header,
+ * deflate compressed data, and a trailer with a checksum and the size.
+ * The size in the last trailer is used to allocate the result array up front,
+ * so for normal (single member) files the text is decompressed without copying.
+ * The compressed file is memory-mapped, so it is streamed from the page cache
+ * into the inflater, instead of being read into the heap first.
+ *
+ * Files made by `bgzip` consist of many small members, and each header
+ * says how long the member is. Then we can find all members without decompressing
+ * them, and decompress them in parallel into their own part of the result.
+ * Other files with many members (e.g., from concatenating gzip files) don't say
+ * where the next member starts, so they are decompressed one member at a time.
+ */
+public class GzipFile {
+    static final int ID1 = 0x1f, ID2 = 0x8b, DEFLATE = 8;
+    static final int FHCRC = 0x02, FEXTRA = 0x04, FNAME = 0x08, FCOMMENT = 0x10;
+    static final int MIN_HEADER_SIZE = 10;
+    static final int TRAILER_SIZE = 8;
+    static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+    static final int MAX_RATIO = 1032;
+
+    public static byte[] read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > MAX_SIZE) {
+                throw new IOException(String.format("The gzip file '%s' is too large to read into memory", file));
+            }
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] blocks = bgzfBlocks(data);
+            return blocks != null ? inflateBlocks(data, blocks) : inflate(data);
+        } catch (DataFormatException e) {
+            throw new IOException(String.format("'%s' is not a valid gzip file: %s", file, e.getMessage()));
+        }
+    }
+
+    // Decompresses the members one after the other.
+    private static byte[] inflate(ByteBuffer data) throws IOException, DataFormatException {
+        long lastSize = data.limit() >= 4 ? readUnsignedInt(data, data.limit() - 4) : 0;
+        // Deflate compresses at most about 1:1032, so a larger size means that the file is
+        // truncated (or has many members), and we only guess the size.
+        if (lastSize > (long) data.limit() * MAX_RATIO) {
+            lastSize = (long) data.limit() * 4;
+        }
+        byte[] out = new byte[(int) Math.min(MAX_SIZE, Math.max(16, lastSize))];
+        int length = 0;
+        int pos = 0;
+        Inflater inflater = new Inflater(true);
+        try {
+            // Some tools pad the file with zeros after the last member.
+            while (pos == 0 || isMember(data, pos)) {
+                int start = dataStart(data, pos);
+                int memberStart = length;
+                inflater.reset();
+                inflater.setInput(data.slice(start, data.limit() - start));
+                while (!inflater.finished()) {
+                    if (length == out.length) {
+                        if (length == MAX_SIZE) {
+                            throw new IOException("The gzip file is too large to read into memory");
+                        }
+                        out = Arrays.copyOf(out, (int) Math.min(MAX_SIZE, (long) length + (length >> 1) + 1));
+                    }
+                    int n = inflater.inflate(out, length, out.length - length);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("Unexpected end of gzip file");
+                    }
+                    length += n;
+                }
+                pos = start + (int) inflater.getBytesRead();
+                checkTrailer(data, pos, out, memberStart, length);
+                pos += TRAILER_SIZE;
+            }
+        } finally {
+            inflater.end();
+        }
+        return length == out.length ? out : Arrays.copyOf(out, length);
+    }
+
+    // Decompresses the members in parallel, since we know where each starts and how large it is.
+    private static byte[] inflateBlocks(ByteBuffer data, int[] blocks) throws IOException, DataFormatException {
+        int numBlocks = blocks.length - 1;
+        int[] outStarts = new int[numBlocks + 1];
+        for (int b = 0; b < numBlocks; b++) {
+            long size = outStarts[b] + readUnsignedInt(data, blocks[b + 1] - 4);
+            if (size > MAX_SIZE) {
+                throw new IOException("The gzip file is too large to read into memory");
+            }
+            outStarts[b + 1] = (int) size;
+        }
+        byte[] out = new byte[outStarts[numBlocks]];
+        Exception[] error = new Exception[1];
+        IntStream.range(0, numBlocks).parallel().forEach(b -> {
+            Inflater inflater = new Inflater(true);
+            try {
+                int start = dataStart(data, blocks[b]);
+                // The trailer is included, since the inflater may need to look beyond the compressed data.
+                inflater.setInput(data.slice(start, blocks[b + 1] - start));
+                int length = outStarts[b + 1] - outStarts[b];
+                int n = 0;
+                while (n < length && !inflater.finished()) {
+                    int k = inflater.inflate(out, outStarts[b] + n, length - n);
+                    if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += k;
+                }
+                if (n != length) {
+                    throw new IOException("The size of a gzip block is wrong");
+                }
+                checkTrailer(data, blocks[b + 1] - TRAILER_SIZE, out, outStarts[b], outStarts[b + 1]);
+            } catch (IOException | DataFormatException e) {
+                synchronized (error) {
+                    error[0] = e;
+                }
+            } finally {
+                inflater.end();
+            }
+        });
+        if (error[0] instanceof DataFormatException) {
+            throw (DataFormatException) error[0];
+        } else if (error[0] != null) {
+            throw (IOException) error[0];
+        }
+        return out;
+    }
+
+    // Returns the start of every member, followed by the end of the file,
+    // if all members have the block size field of `bgzip`. Otherwise returns null.
+    private static int[] bgzfBlocks(ByteBuffer data) {
+        int[] blocks = new int[16];
+        int numBlocks = 0;
+        int pos = 0;
+        while (pos < data.limit()) {
+            if (!isMember(data, pos)) {
+                break;
+            }
+            int blockSize = bgzfBlockSize(data, pos);
+            if (blockSize < 0 || pos + blockSize > data.limit()) {
+                return null;
+            }
+            if (numBlocks + 1 == blocks.length) {
+                blocks = Arrays.copyOf(blocks, 2 * blocks.length);
+            }
+            blocks[numBlocks++] = pos;
+            pos += blockSize;
+        }
+        if (numBlocks == 0) {
+            return null;
+        }
+        blocks[numBlocks] = pos;
+        return Arrays.copyOf(blocks, numBlocks + 1);
+    }
+
+    // The size of the member from the "BC" extra field, or -1 if there is none.
+    private static int bgzfBlockSize(ByteBuffer data, int pos) {
+        if ((data.get(pos + 3) & FEXTRA) == 0 || pos + MIN_HEADER_SIZE + 2 > data.limit()) {
+            return -1;
+        }
+        int extraEnd = pos + MIN_HEADER_SIZE + 2 + readShort(data, pos + MIN_HEADER_SIZE);
+        for (int field = pos + MIN_HEADER_SIZE + 2; field + 4 <= extraEnd && extraEnd <= data.limit(); ) {
+            int length = readShort(data, field + 2);
+            if (data.get(field) == 'B' && data.get(field + 1) == 'C' && length == 2) {
+                return readShort(data, field + 4) + 1;
+            }
+            field += 4 + length;
+        }
+        return -1;
+    }
+
+    private static boolean isMember(ByteBuffer data, int pos) {
+        return pos + MIN_HEADER_SIZE + TRAILER_SIZE <= data.limit()
+            && (data.get(pos) & 0xFF) == ID1 && (data.get(pos + 1) & 0xFF) == ID2 && data.get(pos + 2) == DEFLATE;
+    }
+
+    // Skips the header of the member at `pos`, and returns where the compressed data starts.
+    private static int dataStart(ByteBuffer data, int pos) throws DataFormatException {
+        if (!isMember(data, pos)) {
+            throw new DataFormatException("not in gzip format");
+        }
+        int flags = data.get(pos + 3);
+        pos += MIN_HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            pos += 2 + readShort(data, pos);
+        }
+        if ((flags & FNAME) != 0) {
+            pos = skipString(data, pos);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            pos = skipString(data, pos);
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+        if (pos > data.limit()) {
+            throw new DataFormatException("truncated header");
+        }
+        return pos;
+    }
+
+    private static int skipString(ByteBuffer data, int pos) {
+        while (pos < data.limit() && data.get(pos) != 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    // Checks the checksum and size in the trailer at `pos` against the decompressed data.
+    private static void checkTrailer(ByteBuffer data, int pos, byte[] out, int start, int end) throws DataFormatException {
+        if (pos + TRAILER_SIZE > data.limit()) {
+            throw new DataFormatException("truncated trailer");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out, start, end - start);
+        if (readUnsignedInt(data, pos) != crc.getValue() || readUnsignedInt(data, pos + 4) != ((end - start) & 0xFFFFFFFFL)) {
+            throw new DataFormatException("corrupt data (checksum or size mismatch)");
+        }
+    }
+
+    // All numbers in gzip files are little-endian.
+    private static int readShort(ByteBuffer data, int pos) {
+        return (data.get(pos) & 0xFF) | (data.get(pos + 1) & 0xFF) << 8;
+    }
+
+    private static long readUnsignedInt(ByteBuffer data, int pos) {
+        return (readShort(data, pos) | (long) readShort(data, pos + 2) << 16);
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * The binary index file format.
+ * The file starts with a small header, followed by the index as raw fixed-width ints:
+ *
+ *   bytes 0-3     magic number "SAIX"
+ *   bytes 4-7     format version, plus a flag for sparse indexes (which don't have all suffixes)
+ *   bytes 8-15    length of the text
+ *   bytes 16-23   CRC-32 checksum of the (utf-8 encoded) text
+ *   bytes 24-     the suffix index, one little-endian int per suffix
+ *
+ * The index is never deserialised. Instead it is memory-mapped and searched
+ * in place, so loading is instant and several processes share the page cache.
+ *
+ * The packed format (version 2) only uses as many bits per entry as are needed
+ * for the text positions, ceil(log2 n) for a text of n bytes. E.g., a text of
+ * 10 million bytes needs 24 bits per entry, which makes the file 25% smaller.
+ * The header is longer:
+ *
+ *   bytes 24-31   number of entries
+ *   bytes 32-35   bits per entry
+ *   bytes 36-39   unused
+ *   bytes 40-     the entries as one little-endian bit stream, entry i at bit i * bits,
+ *                 followed by 8 zero bytes
+ *
+ * Any entry can be read with one unaligned 8-byte read, which is why the padding is there.
+ * The packed format is also used for texts larger than 2GB (see `LargeSuffixArray`),
+ * with up to 40 bits per entry.
+ */
+public class IndexFile {
+    static final int MAGIC = 0x58494153;  // "SAIX" when read as little-endian
+    static final int VERSION = 1;
+    static final int PACKED_VERSION = 2;
+    static final int SPARSE_FLAG = 1 << 16;
+    static final int HEADER_SIZE = 24;
+    static final int PACKED_HEADER_SIZE = 40;
+    static final int PADDING = Long.BYTES;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // The index is mapped in segments, since a single mapping can be at most 2GB.
+    static final int SEGMENT_BITS = 28;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    static final int WRITE_BUFFERSIZE = 1 << 16;
+
+    // Texts larger than this can't have a packed index, since an entry must fit in one 8-byte read.
+    static final int MAX_BITS = 40;
+
+    public static long checksum(SuffixArray sa) {
+        return checksum(sa, sa.size());
+    }
+
+    // The checksum of the first `length` bytes of the text.
+    public static long checksum(SuffixArray sa, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(sa.text, 0, length);
+        return crc.getValue();
+    }
+
+    // Returns true if the file starts with the magic number of this format.
+    public static boolean isIndexFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(BYTE_ORDER);
+            return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // Returns true if the index only has some of the suffixes (see `SuffixArray.wordStarts`).
+    public static boolean isSparse(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(8).order(BYTE_ORDER);
+            return channel.read(header, 0) == 8 && (header.getInt(4) & SPARSE_FLAG) != 0;
+        }
+    }
+
+    // The number of bits that are needed for the positions in a text of this length.
+    public static int bitsPerEntry(long textLength) {
+        // An empty text has no positions, but we still use 1 bit.
+        return textLength <= 1 ? 1 : 64 - Long.numberOfLeadingZeros(textLength - 1);
+    }
+
+    public static void write(Path file, int[] index, SuffixArray sa) throws IOException {
+        write(file, index, sa, false);
+    }
+
+    public static void write(Path file, int[] index, SuffixArray sa, boolean packed) throws IOException {
+        write(file, index, sa, packed, false);
+    }
+
+    public static void write(Path file, int[] index, SuffixArray sa, boolean packed, boolean sparse) throws IOException {
+        try (Writer writer = new Writer(file, sa, packed, sparse)) {
+            for (int pos : index) {
+                writer.write(pos);
+            }
+        }
+    }
+
+    // Writes an index file one entry at a time, so the whole index never has to be in memory.
+    public static class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final int bits;  // 0 for the unpacked format
+        private long count;
+        // The packed entries that are not yet written, from the lowest bit up.
+        private long pending;
+        private int pendingBits;
+
+        public Writer(Path file, SuffixArray sa) throws IOException {
+            this(file, sa, false);
+        }
+
+        public Writer(Path file, SuffixArray sa, boolean packed) throws IOException {
+            this(file, sa.size(), checksum(sa), packed, false);
+        }
+
+        public Writer(Path file, SuffixArray sa, boolean packed, boolean sparse) throws IOException {
+            this(file, sa.size(), checksum(sa), packed, sparse);
+        }
+
+        // Large texts always have a packed index.
+        public Writer(Path file, LargeText text) throws IOException {
+            this(file, text.size(), text.checksum(), true, false);
+        }
+
+        private Writer(Path file, long textLength, long checksum, boolean packed, boolean sparse) throws IOException {
+            this.bits = packed ? bitsPerEntry(textLength) : 0;
+            if (this.bits > MAX_BITS) {
+                throw new IOException("The text is too large to be indexed");
+            }
+            this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.buffer = ByteBuffer.allocateDirect(WRITE_BUFFERSIZE).order(BYTE_ORDER);
+            int version = (packed ? PACKED_VERSION : VERSION) | (sparse ? SPARSE_FLAG : 0);
+            this.buffer.putInt(MAGIC).putInt(version).putLong(textLength).putLong(checksum);
+            if (packed) {
+                // The number of entries is filled in when closing.
+                this.buffer.putLong(0).putInt(this.bits).putInt(0);
+            }
+        }
+
+        public void write(int pos) throws IOException {
+            if (this.bits == 0) {
+                if (!this.buffer.hasRemaining()) {
+                    writeBuffer(this.channel, this.buffer);
+                }
+                this.buffer.putInt(pos);
+                return;
+            }
+            this.write((long) pos);
+        }
+
+        // Only for the packed format, which is the only one that can hold positions beyond 2^31.
+        public void write(long pos) throws IOException {
+            if (pos >>> this.bits != 0 || this.bits == 0) {
+                throw new IllegalArgumentException(String.format("The position %d doesn't fit in %d bits", pos, this.bits));
+            }
+            if (this.buffer.remaining() < Long.BYTES) {
+                writeBuffer(this.channel, this.buffer);
+            }
+            // There are less than 8 pending bits, so the new entry always fits.
+            this.count++;
+            this.pending |= pos << this.pendingBits;
+            this.pendingBits += this.bits;
+            if (this.pendingBits >= Integer.SIZE) {
+                this.buffer.putInt((int) this.pending);
+                this.pending >>>= Integer.SIZE;
+                this.pendingBits -= Integer.SIZE;
+            }
+            for (; this.pendingBits >= Byte.SIZE; this.pendingBits -= Byte.SIZE) {
+                this.buffer.put((byte) this.pending);
+                this.pending >>>= Byte.SIZE;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (this.channel) {
+                if (this.bits > 0) {
+                    if (this.buffer.remaining() < Integer.BYTES + PADDING) {
+                        writeBuffer(this.channel, this.buffer);
+                    }
+                    for (; this.pendingBits > 0; this.pendingBits -= Byte.SIZE) {
+                        this.buffer.put((byte) this.pending);
+                        this.pending >>>= Byte.SIZE;
+                    }
+                    this.buffer.putLong(0);
+                }
+                writeBuffer(this.channel, this.buffer);
+                if (this.bits > 0) {
+                    ByteBuffer count = ByteBuffer.allocate(Long.BYTES).order(BYTE_ORDER).putLong(0, this.count);
+                    this.channel.write(count, HEADER_SIZE);
+                }
+            }
+        }
+    }
+
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Returns the length of the text that the index file was built from.
+    public static long textLength(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+            if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException(String.format("'%s' is not an index file", file));
+            }
+            return header.getLong(8);
+        }
+    }
+
+    // Maps the index file into memory, after checking that it belongs to the text.
+    public static SuffixIndex map(Path file, SuffixArray sa) throws IOException {
+        return map(file, sa, sa.size());
+    }
+
+    // The same, but the index file belongs to the first `textLength` bytes of the text.
+    public static SuffixIndex map(Path file, SuffixArray sa, int textLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            int version = checkHeader(file, channel, textLength, () -> checksum(sa, textLength), sa.textFile);
+            if (version == PACKED_VERSION) {
+                PackedEntries entries = new PackedEntries(file, channel);
+                if (entries.size > Integer.MAX_VALUE || entries.bits > Integer.SIZE) {
+                    throw new IOException(String.format("'%s' is the index of a large text", file));
+                }
+                int indexSize = (int) entries.size;
+                return new SuffixIndex() {
+                    public int size() {
+                        return indexSize;
+                    }
+                    public int get(int i) {
+                        return (int) entries.get(i);
+                    }
+                };
+            }
+
+            long size = (channel.size() - HEADER_SIZE) / Integer.BYTES;
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("'%s' has too many entries", file));
+            }
+            IntBuffer[] segments = new IntBuffer[(int) ((size + SEGMENT_SIZE - 1) >> SEGMENT_BITS)];
+            for (int s = 0; s < segments.length; s++) {
+                long start = (long) s << SEGMENT_BITS;
+                long length = Math.min(SEGMENT_SIZE, size - start);
+                segments[s] = channel
+                    .map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + start * Integer.BYTES, length * Integer.BYTES)
+                    .order(BYTE_ORDER)
+                    .asIntBuffer();
+            }
+            int indexSize = (int) size;
+
+            // The mapping stays valid after the channel is closed.
+            return new SuffixIndex() {
+                public int size() {
+                    return indexSize;
+                }
+                public int get(int i) {
+                    return segments[i >>> SEGMENT_BITS].get(i & (SEGMENT_SIZE - 1));
+                }
+            };
+        }
+    }
+
+    // Maps the (packed) index file of a large text.
+    public static LargeSuffixIndex map(Path file, LargeText text) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (checkHeader(file, channel, text.size(), text::checksum, text.file) != PACKED_VERSION) {
+                throw new IOException(String.format("The index file '%s' is not packed", file));
+            }
+            PackedEntries entries = new PackedEntries(file, channel);
+            return new LargeSuffixIndex() {
+                public long size() {
+                    return entries.size;
+                }
+                public long get(long i) {
+                    return entries.get(i);
+                }
+            };
+        }
+    }
+
+    // Checks that the file is an index file of a text with this length and checksum,
+    // and returns its format version. The checksum is only computed if the length matches.
+    private static int checkHeader(Path file, FileChannel channel, long textLength, LongSupplier checksum, Path textFile)
+        throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+        if (channel.read(header, 0) < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException(String.format("'%s' is not an index file", file));
+        }
+        int version = header.getInt(4) & ~SPARSE_FLAG;
+        if (version != VERSION && version != PACKED_VERSION) {
+            throw new IOException(String.format(
+                "'%s' has index format version %d, but only versions %d and %d are supported",
+                file, version, VERSION, PACKED_VERSION
+            ));
+        }
+        if (header.getLong(8) != textLength || header.getLong(16) != checksum.getAsLong()) {
+            throw new IOException(String.format(
+                "The index file '%s' was not built from the text file '%s'", file, textFile
+            ));
+        }
+        return version;
+    }
+
+    // The entries of a packed index file. The segments overlap by the padding size,
+    // so that an 8-byte read from any entry never crosses into the next segment.
+    private static class PackedEntries {
+        final long size;
+        final int bits;
+        final long mask;
+        final MappedByteBuffer[] segments;
+
+        PackedEntries(Path file, FileChannel channel) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(PACKED_HEADER_SIZE).order(BYTE_ORDER);
+            channel.read(header, 0);
+            this.size = header.getLong(24);
+            this.bits = header.getInt(32);
+            this.mask = (1L << this.bits) - 1;
+            long dataSize = (this.size * this.bits + Byte.SIZE - 1) / Byte.SIZE;
+            if (this.size < 0 || this.bits < 1 || this.bits > MAX_BITS
+                    || channel.size() != PACKED_HEADER_SIZE + dataSize + PADDING) {
+                throw new IOException(String.format("'%s' is not a valid packed index file", file));
+            }
+            this.segments = new MappedByteBuffer[(int) ((dataSize + SEGMENT_SIZE - 1) >> SEGMENT_BITS)];
+            for (int s = 0; s < this.segments.length; s++) {
+                long start = (long) s << SEGMENT_BITS;
+                long length = Math.min(SEGMENT_SIZE, dataSize - start) + PADDING;
+                this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, PACKED_HEADER_SIZE + start, length);
+                this.segments[s].order(BYTE_ORDER);
+            }
+        }
+
+        long get(long i) {
+            long bit = i * this.bits;
+            long offset = bit >>> 3;
+            long word = this.segments[(int) (offset >>> SEGMENT_BITS)].getLong((int) (offset & (SEGMENT_SIZE - 1)));
+            return (word >>> (bit & 7)) & this.mask;
+        }
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        // Check that packed index files give back the same positions, also for tiny and empty texts,
+        // where the entries don't fill a single byte.
+        for (int size : new int[] {0, 1, 2, 3, 5, 8, 9, 255, 256, 257, 100_000}) {
+            SuffixArray sa = new SuffixArray();
+            sa.generateRandomText(size, "AB");
+            new PrimitiveSort(sa).buildIndex();
+            Path file = Files.createTempFile("suffix-index-", SuffixArray.INDEX_SUFFIX);
+            try {
+                write(file, sa.index, sa, true);
+                SuffixIndex index = map(file, sa);
+                if (index.size() != size) {
+                    throw new AssertionError("The packed index has the wrong size");
+                }
+                for (int i = 0; i < size; i++) {
+                    if (index.get(i) != sa.index[i]) {
+                        throw new AssertionError("The packed index gives a different result");
+                    }
+                }
+                System.out.format("Size %d: the packed index (%d bits per entry) gives the same result\n",
+                                  size, bitsPerEntry(size));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.Arrays;
+
+// Suffix sorting by induced sorting (SA-IS), by Nong, Zhang & Chan (2009).
+// Unlike the comparison-based sorters, the running time is O(n)
+// regardless of how repetitive the text is.
+
+class InducedSort extends SuffixSorter {
+
+    // The alphabet of the text: all possible bytes.
+    static final int ALPHABET_SIZE = 256;
+
+    InducedSort(SuffixArray sa) {
+        super(sa);
+    }
+
+    // Induced sorting needs all suffixes, since the order of each is derived from the others.
+    @Override
+    public boolean canSortSubsets() {
+        return false;
+    }
+
+    public void sortIndex() {
+        byte[] text = this.sa.text;
+        sais(i -> text[i] & 0xFF, this.sa.index, this.sa.index.length, ALPHABET_SIZE - 1);
+    }
+
+    // Random access to the symbols of the string that is being sorted.
+    // On the top level this is the text, on the recursive levels
+    // it is the reduced string of LMS substring names.
+    private interface Symbols {
+        int at(int i);
+    }
+
+    // Sorts all suffixes of `s[0...n-1]` into `sa`, where all symbols are in [0...upper].
+    // Shorter suffixes come before longer ones that they are a prefix of,
+    // which is the same order as `SuffixArray.compareSuffixes`.
+    static void sais(Symbols s, int[] sa, int n, int upper) {
+        if (n == 0) {
+            return;
+        }
+        if (n == 1) {
+            sa[0] = 0;
+            return;
+        }
+        if (n == 2) {
+            boolean ordered = s.at(0) < s.at(1);
+            sa[0] = ordered ? 0 : 1;
+            sa[1] = ordered ? 1 : 0;
+            return;
+        }
+
+        // Classify each position as S-type (true) or L-type (false).
+        boolean[] sType = new boolean[n];
+        for (int i = n - 2; i >= 0; i--) {
+            int ch = s.at(i), next = s.at(i + 1);
+            sType[i] = ch == next ? sType[i + 1] : ch < next;
+        }
+
+        // Bucket boundaries: `sumS[c]` is the start of the S-part of bucket c,
+        // and `sumL[c]` is the start of the whole bucket c.
+        int[] sumL = new int[upper + 1];
+        int[] sumS = new int[upper + 1];
+        for (int i = 0; i < n; i++) {
+            int ch = s.at(i);
+            if (!sType[i]) {
+                sumS[ch]++;
+            } else {
+                sumL[ch + 1]++;
+            }
+        }
+        for (int c = 0; c <= upper; c++) {
+            sumS[c] += sumL[c];
+            if (c < upper) {
+                sumL[c + 1] += sumS[c];
+            }
+        }
+
+        // Find the LMS (leftmost S-type) positions, and number them.
+        int[] lmsMap = new int[n];
+        int m = 0;
+        for (int i = 1; i < n; i++) {
+            lmsMap[i] = !sType[i - 1] && sType[i] ? m++ : -1;
+        }
+        lmsMap[0] = -1;
+        int[] lms = new int[m];
+        for (int i = 1, k = 0; i < n; i++) {
+            if (lmsMap[i] >= 0) {
+                lms[k++] = i;
+            }
+        }
+
+        int[] buffer = new int[upper + 1];
+        induce(s, sa, n, sType, lms, m, sumL, sumS, buffer);
+
+        if (m > 0) {
+            // The LMS substrings are now sorted. Give each distinct one a name,
+            // and recursively sort the reduced string of names.
+            int[] sortedLms = new int[m];
+            for (int i = 0, k = 0; i < n; i++) {
+                if (lmsMap[sa[i]] >= 0) {
+                    sortedLms[k++] = sa[i];
+                }
+            }
+            int[] reduced = new int[m];
+            int name = 0;
+            reduced[lmsMap[sortedLms[0]]] = 0;
+            for (int i = 1; i < m; i++) {
+                int left = sortedLms[i - 1], right = sortedLms[i];
+                int endLeft = lmsMap[left] + 1 < m ? lms[lmsMap[left] + 1] : n;
+                int endRight = lmsMap[right] + 1 < m ? lms[lmsMap[right] + 1] : n;
+                boolean same = endLeft - left == endRight - right;
+                if (same) {
+                    while (left < endLeft && s.at(left) == s.at(right)) {
+                        left++;
+                        right++;
+                    }
+                    if (left == n || s.at(left) != s.at(right)) {
+                        same = false;
+                    }
+                }
+                if (!same) {
+                    name++;
+                }
+                reduced[lmsMap[sortedLms[i]]] = name;
+            }
+            lmsMap = null;
+
+            int[] reducedSA = new int[m];
+            sais(i -> reduced[i], reducedSA, m, name);
+            for (int i = 0; i < m; i++) {
+                sortedLms[i] = lms[reducedSA[i]];
+            }
+            induce(s, sa, n, sType, sortedLms, m, sumL, sumS, buffer);
+        }
+    }
+
+    // Induces the order of all suffixes from the given order of the LMS suffixes.
+    private static void induce(Symbols s, int[] sa, int n, boolean[] sType, int[] lms, int m,
+                               int[] sumL, int[] sumS, int[] buffer) {
+        Arrays.fill(sa, 0, n, -1);
+
+        // Put the LMS suffixes at the ends of their buckets.
+        System.arraycopy(sumS, 0, buffer, 0, buffer.length);
+        for (int i = 0; i < m; i++) {
+            int pos = lms[i];
+            sa[buffer[s.at(pos)]++] = pos;
+        }
+
+        // Induce the L-type suffixes, scanning left to right.
+        System.arraycopy(sumL, 0, buffer, 0, buffer.length);
+        sa[buffer[s.at(n - 1)]++] = n - 1;
+        for (int i = 0; i < n; i++) {
+            int pos = sa[i];
+            if (pos >= 1 && !sType[pos - 1]) {
+                sa[buffer[s.at(pos - 1)]++] = pos - 1;
+            }
+        }
+
+        // Induce the S-type suffixes, scanning right to left.
+        System.arraycopy(sumL, 0, buffer, 0, buffer.length);
+        for (int i = n - 1; i >= 0; i--) {
+            int pos = sa[i];
+            if (pos >= 1 && sType[pos - 1]) {
+                // An S-type symbol is never `upper`, so `ch + 1` is in range.
+                sa[--buffer[s.at(pos - 1) + 1]] = pos - 1;
+            }
+        }
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter sorter = new InducedSort(sa);
+
+        sa.setText("ABRACADABRA");
+        sorter.buildIndex();
+        sorter.checkIndex();
+        sa.print("ABRACADABRA");
+
+        // Some example performance tests.
+        String alphabet = "ABCD";
+        for (int k = 1; k < 6; k++) {
+            int size = k * 1_000_000;
+            sa.generateRandomText(size, alphabet);
+            sorter.buildIndex();
+            sorter.checkIndex();
+            sa.print(String.format("size: %,d, alphabet: '%s'", size, alphabet));
+        }
+
+        // The running time does not depend on the alphabet, not even if it's only "A".
+        // (But `checkIndex` is quadratic for that alphabet, so we use a smaller size.)
+        alphabet = "A";
+        int size = 50_000;
+        sa.generateRandomText(size, alphabet);
+        sorter.buildIndex();
+        sorter.checkIndex();
+        sa.print(String.format("size: %,d, alphabet: '%s'", size, alphabet));
+    }
+}
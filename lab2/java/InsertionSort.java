@@ -42,6 +42,26 @@ class InsertionSort extends SuffixSorter {
         }
     }
 
+    // The same binary insertion sort, but only for the range [start...end-1] of the index.
+    // This is used by other sorters for small ranges.
+    static void binaryInsertionSort(SuffixArray sa, int start, int end) {
+        for (int i = start + 1; i < end; i++) {
+            int suffix = sa.index[i];
+            int lo = start;
+            int hi = i;
+            while (lo < hi) {
+                int mid = (lo + hi - 1) / 2;
+                if (sa.compareSuffixes(suffix, sa.index[mid]) > 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            System.arraycopy(sa.index, hi, sa.index, hi + 1, i - hi);
+            sa.index[hi] = suffix;
+        }
+    }
+
 
     public static void main(String[] args) {
         SuffixArray sa = new SuffixArray();
@@ -0,0 +1,10 @@
+
+// A comparator for primitive ints, so that int[] arrays can be sorted
+// without boxing the elements (see `IntSort`).
+
+@FunctionalInterface
+public interface IntComparator {
+    // Returns a negative number, zero, or a positive number,
+    // if a is smaller than, equal to, or larger than b.
+    public int compare(int a, int b);
+}
@@ -0,0 +1,164 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorting int[] arrays with a custom comparator, which `java.util.Arrays` cannot do
+ * without boxing every element.
+ *
+ * This is a stable merge sort: small ranges are sorted by insertion sort,
+ * and two sorted halves that are already in order are not merged at all,
+ * so presorted input takes linear time. The parallel version sorts the halves
+ * in parallel, and also splits the merging into independent parts.
+ */
+public class IntSort {
+    static final int INSERTION_SORT_THRESHOLD = 32;
+    static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    public static void sort(int[] a, IntComparator c) {
+        sort(a, 0, a.length, c);
+    }
+
+    // Sorts the range [from...to-1] of the array.
+    public static void sort(int[] a, int from, int to, IntComparator c) {
+        int[] buffer = new int[to - from];
+        mergeSort(a, buffer, from, to, from, c);
+    }
+
+    public static void parallelSort(int[] a, IntComparator c) {
+        int[] buffer = new int[a.length];
+        ForkJoinPool.commonPool().invoke(new SortTask(a, buffer, 0, a.length, 0, c));
+    }
+
+    // Sorts a[lo...hi-1], using buffer[lo-offset...hi-offset-1] as temporary space.
+    private static void mergeSort(int[] a, int[] buffer, int lo, int hi, int offset, IntComparator c) {
+        if (hi - lo <= INSERTION_SORT_THRESHOLD) {
+            insertionSort(a, lo, hi, c);
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(a, buffer, lo, mid, offset, c);
+        mergeSort(a, buffer, mid, hi, offset, c);
+        if (c.compare(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(a, lo, buffer, lo - offset, hi - lo);
+        merge(buffer, lo - offset, mid - offset, mid - offset, hi - offset, a, lo, c);
+    }
+
+    private static void insertionSort(int[] a, int lo, int hi, IntComparator c) {
+        for (int i = lo + 1; i < hi; i++) {
+            int x = a[i];
+            int j = i;
+            while (j > lo && c.compare(a[j - 1], x) > 0) {
+                a[j] = a[j - 1];
+                j--;
+            }
+            a[j] = x;
+        }
+    }
+
+    // Merges the sorted ranges src[lo1...hi1-1] and src[lo2...hi2-1] into dest, starting at `d`.
+    // For equal elements, the ones from the first range come first.
+    private static void merge(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dest, int d, IntComparator c) {
+        while (lo1 < hi1 && lo2 < hi2) {
+            if (c.compare(src[lo1], src[lo2]) <= 0) {
+                dest[d++] = src[lo1++];
+            } else {
+                dest[d++] = src[lo2++];
+            }
+        }
+        System.arraycopy(src, lo1, dest, d, hi1 - lo1);
+        System.arraycopy(src, lo2, dest, d + hi1 - lo1, hi2 - lo2);
+    }
+
+    @SuppressWarnings("serial")
+    private static class SortTask extends RecursiveAction {
+        final int[] a, buffer;
+        final int lo, hi, offset;
+        final IntComparator c;
+
+        SortTask(int[] a, int[] buffer, int lo, int hi, int offset, IntComparator c) {
+            this.a = a;
+            this.buffer = buffer;
+            this.lo = lo;
+            this.hi = hi;
+            this.offset = offset;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                mergeSort(a, buffer, lo, hi, offset, c);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(
+                new SortTask(a, buffer, lo, mid, offset, c),
+                new SortTask(a, buffer, mid, hi, offset, c)
+            );
+            if (c.compare(a[mid - 1], a[mid]) <= 0) {
+                return;
+            }
+            System.arraycopy(a, lo, buffer, lo - offset, hi - lo);
+            new MergeTask(buffer, lo - offset, mid - offset, mid - offset, hi - offset, a, lo, c).compute();
+        }
+    }
+
+    // Merges two sorted ranges in parallel: the middle element of the larger range
+    // is placed by binary search in the other range, and then the elements before it
+    // and after it are merged independently.
+    @SuppressWarnings("serial")
+    private static class MergeTask extends RecursiveAction {
+        final int[] src, dest;
+        final int lo1, hi1, lo2, hi2, d;
+        final IntComparator c;
+
+        MergeTask(int[] src, int lo1, int hi1, int lo2, int hi2, int[] dest, int d, IntComparator c) {
+            this.src = src;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.dest = dest;
+            this.d = d;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            if ((hi1 - lo1) + (hi2 - lo2) <= PARALLEL_THRESHOLD) {
+                merge(src, lo1, hi1, lo2, hi2, dest, d, c);
+                return;
+            }
+            int mid1, mid2;
+            if (hi1 - lo1 >= hi2 - lo2) {
+                // Elements of the second range that are equal to src[mid1] must come after it.
+                mid1 = (lo1 + hi1) >>> 1;
+                mid2 = lowerBound(src, lo2, hi2, src[mid1], false);
+            } else {
+                // Elements of the first range that are equal to src[mid2] must come before it.
+                mid2 = (lo2 + hi2) >>> 1;
+                mid1 = lowerBound(src, lo1, hi1, src[mid2], true);
+            }
+            invokeAll(
+                new MergeTask(src, lo1, mid1, lo2, mid2, dest, d, c),
+                new MergeTask(src, mid1, hi1, mid2, hi2, dest, d + (mid1 - lo1) + (mid2 - lo2), c)
+            );
+        }
+
+        // Returns the first position in [lo...hi-1] whose element is >= x (or > x, if `after` is true).
+        private int lowerBound(int[] a, int lo, int hi, int x, boolean after) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int cmp = c.compare(a[mid], x);
+                if (cmp < 0 || (after && cmp == 0)) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.IOException;
+
+// Quicksort that is guarded against its worst case, like introsort (Musser, 1997):
+//  * It always recurses into the smaller part, and loops over the larger one,
+//    so the recursion depth is at most log2(n), regardless of the pivots.
+//  * If the partitioning goes too deep, the range is sorted by heapsort instead,
+//    so the number of comparisons is O(n log n) in the worst case.
+//  * Small ranges are sorted by binary insertion sort.
+// Note that comparing two suffixes can still take long for very repetitive
+// texts (such as "AAAA..."), but that is the same for all comparison-based sorters.
+
+class IntroQuicksort extends Quicksort {
+    static final int INSERTION_SORT_CUTOFF = 16;
+
+    IntroQuicksort(SuffixArray sa) {
+        super(sa);
+    }
+
+    IntroQuicksort(SuffixArray sa, PivotSelector pivotSelector) {
+        super(sa, pivotSelector);
+    }
+
+    public void sortIndex() {
+        int size = this.sa.index.length;
+        this.progressBar = new ProgressBar<>(size, "Introsorting");
+        this.progressBarSpanSize = size / 10_000;
+        int depthLimit = 2 * (31 - Integer.numberOfLeadingZeros(Math.max(1, size)));
+        this.introsort(0, size, depthLimit);
+        this.progressBar.setValue(size);
+        this.progressBar.close();
+    }
+
+    public void introsort(int start, int end, int depthLimit) {
+        SortMetrics.enter();
+        while (end - start > INSERTION_SORT_CUTOFF) {
+            // Don't update the progress bar unnecessarily often.
+            if (end - start >= progressBarSpanSize) {
+                this.progressBar.setValue(start);
+            }
+            if (depthLimit == 0) {
+                this.heapsort(start, end);
+                SortMetrics.exit();
+                return;
+            }
+            depthLimit--;
+            int partitionPoint = partition(start, end);
+            if (partitionPoint - start < end - partitionPoint - 1) {
+                this.introsort(start, partitionPoint, depthLimit);
+                start = partitionPoint + 1;
+            } else {
+                this.introsort(partitionPoint + 1, end, depthLimit);
+                end = partitionPoint;
+            }
+        }
+        InsertionSort.binaryInsertionSort(this.sa, start, end);
+        SortMetrics.exit();
+    }
+
+    // Sorts the range [start...end-1] by heapsort, with a max-heap stored in the range itself.
+    public void heapsort(int start, int end) {
+        int size = end - start;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            this.siftDown(start, i, size);
+        }
+        for (int last = size - 1; last > 0; last--) {
+            this.swap(start, start + last);
+            this.siftDown(start, 0, last);
+        }
+    }
+
+    // Moves the element at heap position i down, until it is larger than its children.
+    private void siftDown(int start, int i, int size) {
+        int[] index = this.sa.index;
+        int suffix = index[start + i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && this.sa.compareSuffixes(index[start + child], index[start + child + 1]) < 0) {
+                child++;
+            }
+            if (this.sa.compareSuffixes(suffix, index[start + child]) >= 0) {
+                break;
+            }
+            index[start + i] = index[start + child];
+            i = child;
+        }
+        index[start + i] = suffix;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter sorter = new IntroQuicksort(sa);
+
+        // Run this for debugging.
+        sorter.setDebugging(true);
+        sa.setText("ABRACADABRA");
+        sorter.buildIndex();
+        sorter.checkIndex();
+        sa.print("ABRACADABRA");
+
+        // Some example performance tests.
+        sorter.setDebugging(false);
+        String alphabet = "ABCD";
+        for (int k = 1; k < 6; k++) {
+            int size = k * 1_000_000;
+            sa.generateRandomText(size, alphabet);
+            sorter.buildIndex();
+            sorter.checkIndex();
+            sa.print(String.format("size: %,d, alphabet: '%s'", size, alphabet));
+        }
+
+        // Taking the first element as pivot is the worst case for the text "AAAA...",
+        // since the suffixes start out in reverse order. Plain quicksort then recurses
+        // n levels deep, but this version falls back to heapsort.
+        sorter.setPivotSelector(PivotSelector.TakeFirstPivot);
+        alphabet = "A";
+        int size = 20_000;
+        sa.generateRandomText(size, alphabet);
+        Stopwatch stopwatch = new Stopwatch();
+        sorter.buildIndex();
+        stopwatch.finished(String.format("Sorting %,d suffixes of '%s...' with the first element as pivot", size, alphabet));
+        sorter.checkIndex();
+    }
+}
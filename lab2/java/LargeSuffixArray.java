@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Suffix arrays for texts that are larger than 2GB, where positions don't fit in an int.
+ *
+ * The text is memory-mapped (see `LargeText`), and the index is a packed index file
+ * (see `IndexFile`) with ceil(log2 n) bits per entry, which is at most 40 bits for
+ * texts up to 1TB. The index is never in memory: it is built like in `ExternalSort`,
+ * by sorting chunks of consecutive positions and merging them into the index file,
+ * and it is searched directly in the mapped file.
+ *
+ * Each chunk is sorted as an int[] of offsets from the start of the chunk, using the
+ * same parallel merge sort as the "builtin-primitive" sorter. The other sorters,
+ * and the LCP array, bucket table, FM-index and document table, all work on a byte[]
+ * text with int positions, so they can't be used for large texts.
+ */
+public class LargeSuffixArray {
+    // The progress bars count thousands of suffixes, since they only count to 2^31.
+    static final int PROGRESS_SHIFT = 10;
+    // A chunk needs 8 bytes per suffix: the offsets, and the merge sort buffer.
+    static final int BYTES_PER_SUFFIX = 2 * Integer.BYTES;
+    static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    LargeText text;
+    LargeSuffixIndex index;
+    Path textFile;
+    Path indexFile;
+
+    public void loadText(String textFile) throws IOException {
+        this.textFile = Path.of(textFile);
+        this.indexFile = Path.of(textFile + SuffixArray.INDEX_SUFFIX);
+        this.text = new LargeText(this.textFile);
+        this.index = null;
+    }
+
+    public void loadIndex() throws IOException {
+        this.index = IndexFile.map(this.indexFile, this.text);
+    }
+
+    public long size() {
+        return this.text.size();
+    }
+
+    // Builds the index in chunks of at most `memoryBudget` bytes, and writes it to `indexFile`.
+    public void buildIndex(long memoryBudget) throws IOException {
+        long n = this.size();
+        int chunkSize = (int) Math.max(1, Math.min(Math.min(n, MAX_CHUNK_SIZE), memoryBudget / BYTES_PER_SUFFIX));
+        List<Path> runs = new ArrayList<>();
+        try {
+            ProgressBar<?> progressBar = new ProgressBar<>((int) (n >>> PROGRESS_SHIFT) + 1, "Sorting chunks");
+            for (long start = 0; start < n; start += chunkSize) {
+                long chunkStart = start;
+                int[] offsets = new int[(int) Math.min(chunkSize, n - start)];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = i;
+                }
+                IntSort.parallelSort(offsets, (a, b) -> this.text.compareSuffixes(chunkStart + a, chunkStart + b));
+                Path run = Files.createTempFile("suffix-run-", ".tmp");
+                runs.add(run);
+                writeRun(run, chunkStart, offsets);
+                progressBar.setValue((int) ((start + offsets.length) >>> PROGRESS_SHIFT));
+            }
+            progressBar.close();
+            merge(runs, memoryBudget);
+        } finally {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+        this.index = null;
+    }
+
+    // The runs store the positions as longs.
+    private static void writeRun(Path file, long chunkStart, int[] offsets) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(IndexFile.WRITE_BUFFERSIZE).order(IndexFile.BYTE_ORDER);
+            for (int offset : offsets) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putLong(chunkStart + offset);
+            }
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Merges the sorted runs into the index file, with one read buffer per run.
+    private void merge(List<Path> runs, long memoryBudget) throws IOException {
+        int bufferSize = (int) Math.max(ExternalSort.MIN_BUFFER_SIZE,
+            Math.min(Integer.MAX_VALUE / 2, memoryBudget / (runs.size() + 1)));
+        PriorityQueue<Run> queue = new PriorityQueue<>(
+            Math.max(1, runs.size()), (a, b) -> this.text.compareSuffixes(a.head, b.head)
+        );
+        List<Run> opened = new ArrayList<>();
+        ProgressBar<?> progressBar = new ProgressBar<>((int) (this.size() >>> PROGRESS_SHIFT) + 1,
+                                                       String.format("Merging %d runs", runs.size()));
+        try (IndexFile.Writer writer = new IndexFile.Writer(this.indexFile, this.text)) {
+            for (Path file : runs) {
+                Run run = new Run(file, bufferSize);
+                opened.add(run);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            long written = 0;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                writer.write(run.head);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+                if ((++written & ((1 << (PROGRESS_SHIFT + 10)) - 1)) == 0) {
+                    progressBar.setValue((int) (written >>> PROGRESS_SHIFT));
+                }
+            }
+        } finally {
+            for (Run run : opened) {
+                run.channel.close();
+            }
+            progressBar.setValue((int) (this.size() >>> PROGRESS_SHIFT) + 1);
+            progressBar.close();
+        }
+    }
+
+    // A sorted run that is read sequentially. `head` is its current smallest suffix.
+    private static class Run {
+        final FileChannel channel;
+        final ByteBuffer buffer;
+        long head;
+
+        Run(Path file, int bufferSize) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.READ);
+            this.buffer = ByteBuffer.allocateDirect(bufferSize & -Long.BYTES).order(IndexFile.BYTE_ORDER);
+            this.buffer.flip();
+        }
+
+        // Moves to the next suffix, and returns false if the run is finished.
+        boolean advance() throws IOException {
+            if (!this.buffer.hasRemaining()) {
+                this.buffer.clear();
+                while (this.buffer.hasRemaining()) {
+                    if (this.channel.read(this.buffer) < 0) {
+                        break;
+                    }
+                }
+                this.buffer.flip();
+                if (!this.buffer.hasRemaining()) {
+                    return false;
+                }
+            }
+            this.head = this.buffer.getLong();
+            return true;
+        }
+    }
+
+    // Checks that the mapped index is sorted.
+    public void checkIndex() {
+        long size = this.index.size();
+        ProgressBar<?> progressBar = new ProgressBar<>((int) (size >>> PROGRESS_SHIFT) + 1, "Checking index");
+        long left = size > 0 ? this.index.get(0) : 0;
+        for (long i = 1; i < size; i++) {
+            if ((i & ((1 << (PROGRESS_SHIFT + 10)) - 1)) == 0) progressBar.setValue((int) (i >>> PROGRESS_SHIFT));
+            long right = this.index.get(i);
+            if (this.text.compareSuffixes(left, right) >= 0) {
+                throw new AssertionError(String.format("Ordering error in positions %d-%d", i, left));
+            }
+            left = right;
+        }
+        progressBar.setValue((int) (size >>> PROGRESS_SHIFT) + 1);
+        progressBar.close();
+    }
+
+    // Returns the range [first, last) of all suffixes that start with the key,
+    // with the same two binary searches as `BinarySearch.binarySearchRange`.
+    public long[] binarySearchRange(byte[] key) {
+        long first = binarySearch(key, 0, this.index.size(), false);
+        long last = binarySearch(key, first, this.index.size(), true);
+        return new long[] {first, last};
+    }
+
+    // Returns the first index in [lo, hi) whose suffix is >= the key (or > the key, if `after`).
+    private long binarySearch(byte[] key, long lo, long hi, boolean after) {
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            int cmp = this.text.compareSuffixToValue(this.index.get(mid), key);
+            if (cmp < 0 || (after && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        // Compare with the normal suffix array, on a text that is small enough for both.
+        Path file = Files.createTempFile("large-text-", ".txt");
+        SuffixArray sa = new SuffixArray();
+        try {
+            sa.generateRandomText(1_000_000, "ABCD");
+            Files.write(file, sa.text);
+            new PrimitiveSort(sa).buildIndex();
+
+            LargeSuffixArray large = new LargeSuffixArray();
+            large.loadText(file.toString());
+            large.buildIndex(1 << 20);  // a few chunks
+            large.loadIndex();
+            large.checkIndex();
+            for (int i = 0; i < sa.size(); i++) {
+                if (large.index.get(i) != sa.index[i]) {
+                    throw new AssertionError("The large suffix array gives a different result");
+                }
+            }
+            long[] range = large.binarySearchRange("ABBA".getBytes(SuffixArray.ENCODING));
+            System.out.format("'ABBA' occurs %d times\n", range[1] - range[0]);
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(Path.of(file + SuffixArray.INDEX_SUFFIX));
+        }
+    }
+}
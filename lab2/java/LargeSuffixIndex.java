@@ -0,0 +1,11 @@
+
+// Read-only access to the sorted suffix index of a large text (see `LargeSuffixArray`),
+// which can have more than 2^31 suffixes, so the positions are longs.
+
+public interface LargeSuffixIndex {
+    // The number of suffixes in the index.
+    public long size();
+
+    // The text position of the i:th smallest suffix.
+    public long get(long i);
+}
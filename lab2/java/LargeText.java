@@ -0,0 +1,117 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A text file that is too large for a byte array (more than 2GB).
+ *
+ * The file is memory-mapped in segments of 1GB, since a single mapping can be
+ * at most 2GB. The segments overlap by 8 bytes, so that 8 bytes from any position
+ * can be read at once from one segment. Suffix comparisons use this to compare
+ * 8 bytes per step, as unsigned big-endian longs.
+ */
+public class LargeText {
+    static final int SEGMENT_BITS = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    static final int OVERLAP = Long.BYTES;
+
+    final Path file;
+    private final long size;
+    private final MappedByteBuffer[] segments;
+    private long checksum = -1;
+
+    public LargeText(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            this.size = channel.size();
+            this.segments = new MappedByteBuffer[(int) ((this.size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+            for (int s = 0; s < this.segments.length; s++) {
+                long start = (long) s << SEGMENT_BITS;
+                long length = Math.min(SEGMENT_SIZE + OVERLAP, this.size - start);
+                this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                this.segments[s].order(ByteOrder.BIG_ENDIAN);
+            }
+        }
+    }
+
+    public long size() {
+        return this.size;
+    }
+
+    public byte byteAt(long pos) {
+        return this.segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & (SEGMENT_SIZE - 1)));
+    }
+
+    // The 8 bytes from `pos` on, which must all be in the text.
+    private long word(long pos) {
+        return this.segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & (SEGMENT_SIZE - 1)));
+    }
+
+    public int compareSuffixes(long suffix1, long suffix2) {
+        if (suffix1 == suffix2) {
+            return 0;
+        }
+        long length = this.size - Math.max(suffix1, suffix2);
+        long i = 0;
+        for (; i + Long.BYTES <= length; i += Long.BYTES) {
+            long word1 = word(suffix1 + i), word2 = word(suffix2 + i);
+            if (word1 != word2) {
+                return Long.compareUnsigned(word1, word2) < 0 ? -1 : 1;
+            }
+        }
+        for (; i < length; i++) {
+            byte ch1 = byteAt(suffix1 + i), ch2 = byteAt(suffix2 + i);
+            if (ch1 != ch2) {
+                return Byte.compareUnsigned(ch1, ch2) < 0 ? -1 : 1;
+            }
+        }
+        // The shorter suffix is a prefix of the longer one.
+        return suffix1 > suffix2 ? -1 : 1;
+    }
+
+    public int compareSuffixToValue(long suffix, byte[] value) {
+        int length = (int) Math.min(value.length, this.size - suffix);
+        for (int i = 0; i < length; i++) {
+            byte ch = byteAt(suffix + i);
+            if (ch != value[i]) {
+                return Byte.compareUnsigned(ch, value[i]) < 0 ? -1 : 1;
+            }
+        }
+        // If the suffix is shorter than the value, it is a prefix of it.
+        return length < value.length ? -1 : 0;
+    }
+
+    // Decodes the text between the given byte positions (which must be less than 2GB apart).
+    public String substring(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return new String(bytes, SuffixArray.ENCODING);
+    }
+
+    // Moves a position backwards to the start of the utf-8 encoded character it is in.
+    public long charStart(long pos) {
+        while (0 < pos && pos < this.size && (byteAt(pos) & 0xC0) == 0x80) {
+            pos--;
+        }
+        return pos;
+    }
+
+    // The CRC-32 checksum of the whole text, as in the header of index files.
+    public long checksum() {
+        if (this.checksum < 0) {
+            CRC32 crc = new CRC32();
+            for (int s = 0; s < this.segments.length; s++) {
+                long length = Math.min(SEGMENT_SIZE, this.size - ((long) s << SEGMENT_BITS));
+                crc.update(this.segments[s].slice(0, (int) length));
+            }
+            this.checksum = crc.getValue();
+        }
+        return this.checksum;
+    }
+}
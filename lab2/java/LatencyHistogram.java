@@ -0,0 +1,65 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of request latencies, which can be updated from many threads.
+ * The buckets are powers of two microseconds: bucket k counts the latencies
+ * in [2^(k-1), 2^k) microseconds (and bucket 0 counts those below 1 µs).
+ */
+public class LatencyHistogram {
+    static final int NUM_BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    /**
+     * Records one request that took the given number of nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Returns the total number of recorded requests.
+     */
+    public long count() {
+        long total = 0;
+        for (int k = 0; k < NUM_BUCKETS; k++) {
+            total += buckets.get(k);
+        }
+        return total;
+    }
+
+    /**
+     * Returns an upper bound (in microseconds) of the given percentile of the latencies.
+     */
+    public long percentile(double p) {
+        long total = count();
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int k = 0; k < NUM_BUCKETS; k++) {
+            seen += buckets.get(k);
+            if (seen >= rank && seen > 0) {
+                return 1L << k;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns a report with the percentiles and the non-empty buckets, one per line.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d requests, p50 < %d µs, p90 < %d µs, p99 < %d µs, max < %d µs\n",
+                                    count(), percentile(50), percentile(90), percentile(99), percentile(100)));
+        for (int k = 0; k < NUM_BUCKETS; k++) {
+            long n = buckets.get(k);
+            if (n > 0) {
+                report.append(String.format("%10s µs: %d\n", "< " + (1L << k), n));
+            }
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+/**
+ * The LCP array, and binary search accelerated by it.
+ *
+ * lcp[i] is the length of the longest common prefix of the suffixes
+ * at index[i-1] and index[i] (and lcp[0] = 0).
+ *
+ * For searching, we derive the LCP-LR information of Manber & Myers (1993):
+ * for every midpoint M of the binary search, the longest common prefix
+ * with its left and right boundaries. With these, the search never compares
+ * a character of the search value twice, so it takes O(m + log n) time
+ * instead of O(m log n).
+ *
+ * `BuildIndex` computes the LCP-LR arrays once, and stores them next to the index
+ * file, in the same format (see `IndexFile`). The searches map them from disk,
+ * so they start right away and share the page cache, like the index.
+ */
+public class LcpArray {
+    // leftLcp[M] and rightLcp[M] are the longest common prefixes between
+    // the midpoint M and the left and right boundaries of the search interval
+    // that has M as its midpoint. The boundaries -1 and n are empty.
+    SuffixIndex leftLcp;
+    SuffixIndex rightLcp;
+
+    public LcpArray(SuffixIndex leftLcp, SuffixIndex rightLcp) throws IOException {
+        if (leftLcp.size() != rightLcp.size()) {
+            throw new IOException("The left and right LCP arrays have different sizes");
+        }
+        this.leftLcp = leftLcp;
+        this.rightLcp = rightLcp;
+    }
+
+    public static LcpArray load(Path leftFile, Path rightFile, SuffixArray sa) throws IOException {
+        return new LcpArray(IndexFile.map(leftFile, sa), IndexFile.map(rightFile, sa));
+    }
+
+    // Computes the LCP-LR arrays {leftLcp, rightLcp} from the LCP array.
+    public static int[][] lcpLR(int[] lcp) {
+        int n = lcp.length;
+        int[][] lcpLR = {new int[n], new int[n]};
+        fillLcpLR(lcp, lcpLR[0], lcpLR[1], -1, n);
+        return lcpLR;
+    }
+
+    // Returns the longest common prefix of the suffixes at lo and hi.
+    private static int fillLcpLR(int[] lcp, int[] leftLcp, int[] rightLcp, int lo, int hi) {
+        if (hi - lo == 1) {
+            return lo < 0 || hi >= lcp.length ? 0 : lcp[hi];
+        }
+        int mid = (lo + hi) >>> 1;
+        leftLcp[mid] = fillLcpLR(lcp, leftLcp, rightLcp, lo, mid);
+        rightLcp[mid] = fillLcpLR(lcp, leftLcp, rightLcp, mid, hi);
+        return Math.min(leftLcp[mid], rightLcp[mid]);
+    }
+
+    // Returns the first index whose suffix starts with the key, or -1 if there is none.
+    // This gives the same result as `BinarySearch.binarySearchFirst`.
+    public int binarySearchFirst(SuffixArray sa, byte[] key) {
+        SuffixIndex index = sa.searchIndex();
+        // Invariant: suffix(lo) < key <= suffix(hi),
+        // and lcpLo, lcpHi are the common prefixes of key with suffix(lo), suffix(hi).
+        int lo = -1, hi = index.size();
+        int lcpLo = 0, lcpHi = 0;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            int common;
+            if (lcpLo >= lcpHi) {
+                int left = this.leftLcp.get(mid);
+                if (left > lcpLo) {
+                    lo = mid;
+                    continue;
+                } else if (left < lcpLo) {
+                    hi = mid;
+                    lcpHi = left;
+                    continue;
+                }
+                common = lcpLo;
+            } else {
+                int right = this.rightLcp.get(mid);
+                if (right > lcpHi) {
+                    hi = mid;
+                    continue;
+                } else if (right < lcpHi) {
+                    lo = mid;
+                    lcpLo = right;
+                    continue;
+                }
+                common = lcpHi;
+            }
+            // We have to compare characters, but can skip the ones we know are equal.
+            int suffix = index.get(mid);
+            common = extendMatch(sa.text, suffix, key, common);
+            if (common < key.length && (suffix + common == sa.size()
+                    || Byte.compareUnsigned(sa.text[suffix + common], key[common]) < 0)) {
+                lo = mid;
+                lcpLo = common;
+            } else {
+                hi = mid;
+                lcpHi = common;
+            }
+        }
+        return hi < index.size() && lcpHi == key.length ? hi : -1;
+    }
+
+    private static int extendMatch(byte[] text, int suffix, byte[] key, int common) {
+        while (common < key.length && suffix + common < text.length && text[suffix + common] == key[common]) {
+            common++;
+        }
+        return common;
+    }
+
+    // Builds the LCP array from a sorted suffix array, using Kasai's algorithm.
+    // The text is split into chunks that are processed in parallel, and each chunk
+    // restarts with an empty common prefix. This only costs O(chunks * max lcp)
+    // extra comparisons, so the total time is still linear for normal texts.
+    public static int[] kasai(SuffixArray sa) {
+        int n = sa.size();
+        SuffixIndex index = sa.searchIndex();
+        byte[] text = sa.text;
+
+        int[] rank = new int[n];
+        IntStream.range(0, n).parallel().forEach(i -> rank[index.get(i)] = i);
+
+        int[] lcp = new int[n];
+        int chunks = Math.min(n, 4 * Runtime.getRuntime().availableProcessors());
+        int chunkSize = chunks == 0 ? 0 : (n + chunks - 1) / chunks;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int end = Math.min(n, (chunk + 1) * chunkSize);
+            int common = 0;
+            for (int pos = chunk * chunkSize; pos < end; pos++) {
+                int r = rank[pos];
+                if (r == 0) {
+                    common = 0;
+                    continue;
+                }
+                int previous = index.get(r - 1);
+                while (pos + common < n && previous + common < n && text[pos + common] == text[previous + common]) {
+                    common++;
+                }
+                lcp[r] = common;
+                if (common > 0) {
+                    common--;
+                }
+            }
+        });
+        return lcp;
+    }
+}
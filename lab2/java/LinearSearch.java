@@ -0,0 +1,143 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Searching the text without an index, by the Boyer-Moore-Horspool algorithm.
+ *
+ * Horspool compares the last byte of the key first, and if the window doesn't match,
+ * it skips ahead by how far that text byte is from the end of the key (or by the whole
+ * key length, if the byte isn't in the key). So for longer keys most text bytes are
+ * never looked at.
+ *
+ * The text is split into chunks that are searched in parallel on a fork/join pool.
+ * The matches are returned lazily and in position order: only a few chunks ahead
+ * of the caller are searched, so stopping after the first matches is cheap.
+ */
+public class LinearSearch {
+    static final int CHUNK_SIZE = 1 << 20;
+    static final int ALPHABET_SIZE = 256;
+
+    // For each byte, how far the window can move when that byte is under the end of it.
+    static int[] skipTable(byte[] key) {
+        int[] skip = new int[ALPHABET_SIZE];
+        Arrays.fill(skip, key.length);
+        for (int i = 0; i < key.length - 1; i++) {
+            skip[key[i] & 0xFF] = key.length - 1 - i;
+        }
+        return skip;
+    }
+
+    // Returns all matches that start in [from...to-1], in order.
+    // The matches can extend beyond `to`, but `to` must be at most text.length - key.length + 1.
+    static int[] searchRange(byte[] text, byte[] key, int[] skip, int from, int to) {
+        int m = key.length;
+        byte last = key[m - 1];
+        int[] matches = new int[16];
+        int count = 0;
+        for (int pos = from; pos < to; ) {
+            byte b = text[pos + m - 1];
+            if (b == last && Arrays.equals(text, pos, pos + m - 1, key, 0, m - 1)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, 2 * count);
+                }
+                matches[count++] = pos;
+            }
+            pos += skip[b & 0xFF];
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    // Iterates through all positions where the key occurs in the text, in order.
+    public static Iterable<Integer> search(byte[] text, byte[] key) {
+        if (key.length == 0) {
+            throw new IllegalArgumentException("Cannot search for the empty string");
+        }
+        int[] skip = skipTable(key);
+        // The chunk arithmetic is done in longs, since the text can be almost 2^31 bytes.
+        int numStarts = Math.max(0, text.length - key.length + 1);
+        int numChunks = (int) ((numStarts + (long) CHUNK_SIZE - 1) / CHUNK_SIZE);
+        int prefetch = ForkJoinPool.commonPool().getParallelism() + 1;
+
+        return new Iterable<>() {
+            @Override
+            public Iterator<Integer> iterator() {
+                return new Iterator<>() {
+                    final Deque<ForkJoinTask<int[]>> pending = new ArrayDeque<>();
+                    int nextChunk = 0;
+                    int[] matches = new int[0];
+                    int i = 0;
+
+                    // Keeps the next few chunks searching in the background.
+                    private void submitChunks() {
+                        while (pending.size() < prefetch && nextChunk < numChunks) {
+                            int from = nextChunk * CHUNK_SIZE;
+                            int to = (int) Math.min(numStarts, (long) from + CHUNK_SIZE);
+                            pending.add(ForkJoinPool.commonPool().submit(() -> searchRange(text, key, skip, from, to)));
+                            nextChunk++;
+                        }
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        while (i == matches.length) {
+                            submitChunks();
+                            if (pending.isEmpty()) {
+                                return false;
+                            }
+                            matches = pending.poll().join();
+                            i = 0;
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public Integer next() {
+                        if (hasNext()) {
+                            return matches[i++];
+                        }
+                        throw new NoSuchElementException();
+                    }
+                };
+            }
+        };
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        int size = 50_000_000;
+        sa.generateRandomText(size, alphabet);
+
+        // Compare with checking every position.
+        for (String value : new String[] {"A", "ABC", "ABCD", "XYZZY", "ABCDEFGHIJ"}) {
+            byte[] key = value.getBytes(SuffixArray.ENCODING);
+            Stopwatch stopwatch = new Stopwatch();
+            int naive = 0;
+            for (int pos = 0; pos + key.length <= size; pos++) {
+                if (Arrays.equals(key, 0, key.length, sa.text, pos, pos + key.length)) {
+                    naive++;
+                }
+            }
+            stopwatch.finished(String.format("Checking every position for '%s' (%d matches)", value, naive));
+            int count = 0;
+            int previous = -1;
+            for (int pos : search(sa.text, key)) {
+                if (pos <= previous) {
+                    throw new AssertionError("The matches are not in order");
+                }
+                previous = pos;
+                count++;
+            }
+            stopwatch.finished(String.format("Horspool search for '%s' (%d matches)", value, count));
+            if (count != naive) {
+                throw new AssertionError("Horspool search gives a different result");
+            }
+        }
+    }
+}
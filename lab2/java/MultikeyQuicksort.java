@@ -11,8 +11,13 @@ class MultikeyQuicksort extends SuffixSorter {
         super(sa, pivotSelector);
     }
 
+    @Override
+    public boolean usesPivotSelector() {
+        return true;
+    }
+
     public void sortIndex() {
-        int size = this.sa.size();
+        int size = this.sa.index.length;
         this.progressBarSpanSize = size / 10_000;
         this.progressBar = new ProgressBar<>(size, "Multikey quicksorting");
         // Don't change this call, the second argument should be `size`:
@@ -37,15 +42,17 @@ class MultikeyQuicksort extends SuffixSorter {
             this.progressBar.setValue(start);
         }
 
+        SortMetrics.enter();
         //---------- TASK 5: Multikey quicksort -------------------------------//
         IndexPair middle = partition(start, end, offset);
         multikeyQuicksort(start, middle.start, offset);
         multikeyQuicksort(middle.start, middle.end, offset + 1);
         multikeyQuicksort(middle.end, end, offset);
         //---------- END TASK 5 -----------------------------------------------//
+        SortMetrics.exit();
     }
 
-    private class IndexPair {
+    static class IndexPair {
         int start;
         int end;
         IndexPair(int start, int end) {
@@ -55,8 +62,9 @@ class MultikeyQuicksort extends SuffixSorter {
     }
 
     private char getCharAtOffset(int i, int offset) {
+        SortMetrics.characters(1);
         int pos = this.sa.index[i] + offset;
-        return pos < this.sa.text.length() ? this.sa.text.charAt(pos) : '\0';
+        return pos < this.sa.text.length ? (char) (this.sa.text[pos] & 0xFF) : '\0';
     };
 
     public IndexPair partition(int start, int end, int offset) {
@@ -95,6 +103,7 @@ class MultikeyQuicksort extends SuffixSorter {
             }
         }
         //---------- END TASK 5 -----------------------------------------------//
+        SortMetrics.partition(end - start, Math.max(middleEnd - middleStart, Math.max(middleStart - start, end - middleEnd)));
 
         if (debug) {
             // When debugging, print an excerpt of the suffix array.
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Multikey quicksort that runs on all cores, using a fork/join pool.
+// After partitioning, the three ranges are independent of each other,
+// so every range that is large enough is sorted as a separate task.
+
+class ParallelMultikeyQuicksort extends MultikeyQuicksort {
+    // Ranges smaller than this are sorted sequentially within one task.
+    static final int SEQUENTIAL_CUTOFF = 8_192;
+
+    ParallelMultikeyQuicksort(SuffixArray sa) {
+        super(sa);
+    }
+
+    ParallelMultikeyQuicksort(SuffixArray sa, PivotSelector pivotSelector) {
+        super(sa, pivotSelector);
+    }
+
+    public void sortIndex() {
+        if (this.debug) {
+            // The debugging output would be interleaved, so we sort sequentially instead.
+            super.sortIndex();
+            return;
+        }
+        int size = this.sa.index.length;
+        this.progressBar = new ProgressBar<>(size, "Parallel multikey sorting");
+        ForkJoinPool.commonPool().invoke(new SortTask(0, size, 0));
+        this.progressBar.setValue(size);
+        this.progressBar.close();
+    }
+
+    @SuppressWarnings("serial")
+    private class SortTask extends RecursiveAction {
+        final int start;
+        final int end;
+        final int offset;
+
+        SortTask(int start, int end, int offset) {
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+
+        // The middle range (whose suffixes have one more byte in common) is sorted
+        // in a loop within this task, and only the other two are forked. For repetitive
+        // texts the middle ranges can be nested as deep as the longest repeat,
+        // which would overflow the stack if every level was a separate task.
+        @Override
+        protected void compute() {
+            int start = this.start, end = this.end, offset = this.offset;
+            List<SortTask> forked = new ArrayList<>();
+            while (end - start >= SEQUENTIAL_CUTOFF) {
+                IndexPair middle = partition(start, end, offset);
+                for (SortTask task : List.of(new SortTask(start, middle.start, offset),
+                                             new SortTask(middle.end, end, offset))) {
+                    if (task.end > task.start) {
+                        task.fork();
+                        forked.add(task);
+                    }
+                }
+                start = middle.start;
+                end = middle.end;
+                offset++;
+            }
+            sequentialSort(start, end, offset);
+            // The tasks finish in any order, so we count the sorted
+            // elements instead of setting the progress to a position.
+            progressBar.update(end - start);
+            for (SortTask task : forked) {
+                task.join();
+            }
+        }
+    }
+
+    // The same recursion as `multikeyQuicksort`, but without touching the progress bar,
+    // and with a loop instead of recursion for the middle range (see `SortTask`).
+    private void sequentialSort(int start, int end, int offset) {
+        if (end - start <= 1) {
+            return;
+        }
+        SortMetrics.enter();
+        while (end - start > 1) {
+            IndexPair middle = partition(start, end, offset);
+            sequentialSort(start, middle.start, offset);
+            sequentialSort(middle.end, end, offset);
+            start = middle.start;
+            end = middle.end;
+            offset++;
+        }
+        SortMetrics.exit();
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter sequential = new MultikeyQuicksort(sa);
+        SuffixSorter parallel = new ParallelMultikeyQuicksort(sa);
+
+        // Compare the running time with the sequential version.
+        String alpabet = "ABCDEFGHIJKLMNOP";
+        for (int k = 1; k < 6; k++) {
+            int size = k * 2_000_000;
+            sa.generateRandomText(size, alpabet);
+            Stopwatch stopwatch = new Stopwatch();
+            sequential.buildIndex();
+            stopwatch.finished(String.format("Sequential sorting of %,d chars", size));
+            int[] expected = sa.index;
+            parallel.buildIndex();
+            stopwatch.finished(String.format("Parallel sorting of %,d chars", size));
+            if (!Arrays.equals(expected, sa.index)) {
+                throw new AssertionError("The parallel sorter gives a different result");
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+import java.util.Arrays;
+
+// Like `BuiltinSort`, but without boxing: the index is sorted directly
+// as an int[] by a merge sort that takes a comparator for ints (see `IntSort`).
+// This avoids creating an Integer object for every suffix,
+// and the sorting is done in parallel.
+
+class PrimitiveSort extends SuffixSorter {
+
+    PrimitiveSort(SuffixArray sa) {
+        super(sa);
+    }
+
+    public void sortIndex() {
+        IntComparator compare = this.sa::compareSuffixes;
+        if (this.debug) {
+            IntSort.sort(this.sa.index, compare);
+        } else {
+            IntSort.parallelSort(this.sa.index, compare);
+        }
+    }
+
+
+    public static void main(String[] args) {
+        SuffixArray sa = new SuffixArray();
+        SuffixSorter boxed = new BuiltinSort(sa);
+        SuffixSorter primitive = new PrimitiveSort(sa);
+
+        // Compare the running time with the boxed version.
+        String alphabet = "ABCDEFGHIJKLMNOP";
+        for (int k = 1; k < 6; k++) {
+            int size = k * 1_000_000;
+            sa.generateRandomText(size, alphabet);
+            Stopwatch stopwatch = new Stopwatch();
+            boxed.buildIndex();
+            stopwatch.finished(String.format("Builtin sorting of %,d chars", size));
+            int[] expected = sa.index;
+            primitive.buildIndex();
+            stopwatch.finished(String.format("Primitive sorting of %,d chars", size));
+            if (!Arrays.equals(expected, sa.index)) {
+                throw new AssertionError("The primitive sorter gives a different result");
+            }
+        }
+    }
+}
@@ -102,12 +102,14 @@ class ProgressBar<T> implements Iterable<T> {
         };
     }
 
-    public void close() {
+    // The methods that update the bar are synchronized,
+    // so that it can be shared between several sorting threads.
+    public synchronized void close() {
         this.printInfoline();
         this.closeInfoline();
     }
 
-    public void setValue(int n) {
+    public synchronized void setValue(int n) {
         if (n > this.n) {
             this.n = n;
             if (n % this.interval == 0) {
@@ -116,9 +118,10 @@ class ProgressBar<T> implements Iterable<T> {
         }
     }
 
-    public void update(int add) {
+    public synchronized void update(int add) {
+        int previous = this.n;
         this.n += add;
-        if (this.n % this.interval == 0) {
+        if (this.n / this.interval != previous / this.interval) {
             this.printInfoline();
         }
     }
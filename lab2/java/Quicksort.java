@@ -12,8 +12,13 @@ class Quicksort extends SuffixSorter {
         super(sa, pivotSelector);
     }
 
+    @Override
+    public boolean usesPivotSelector() {
+        return true;
+    }
+
     public void sortIndex() {
-        int size = this.sa.size();
+        int size = this.sa.index.length;
         this.progressBar = new ProgressBar<>(size, "Quicksorting");
         this.progressBarSpanSize = size / 10_000;
         // Don't change this call, the second argument should be `size`:
@@ -38,11 +43,13 @@ class Quicksort extends SuffixSorter {
             this.progressBar.setValue(start);
         }
 
+        SortMetrics.enter();
         //---------- TASK 3b: Quicksort ---------------------------------------//
         int partitionPoint = partition(start, end);
         quicksort(start, partitionPoint);
         quicksort(partitionPoint + 1, end);
         //---------- END TASK 3b ----------------------------------------------//
+        SortMetrics.exit();
     }
 
     public int partition(int start, int end) {
@@ -81,13 +88,14 @@ class Quicksort extends SuffixSorter {
         this.swap(start, hi);
         newPivotIndex = hi;
         //---------- END TASK 3b ----------------------------------------------//
+        SortMetrics.partition(end - start, Math.max(newPivotIndex - start, end - newPivotIndex - 1));
 
         if (debug) {
             // When debugging, print an excerpt of the suffix array.
             String pivotValue = (
                 pivotSuffix + 20 <= sa.size()
-                ? this.sa.text.substring(pivotSuffix, pivotSuffix + 20) + "..."
-                : this.sa.text.substring(pivotSuffix)
+                ? this.sa.substring(pivotSuffix, sa.charStart(pivotSuffix + 20)) + "..."
+                : this.sa.substring(pivotSuffix)
             );
             String header = String.format("start: %d, end: %d, pivot: %s", start, end, pivotValue);
             this.sa.print(header, new int[] {start, newPivotIndex, newPivotIndex+1, end}, " <=> ");
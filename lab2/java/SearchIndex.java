@@ -1,6 +1,10 @@
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -12,40 +16,30 @@ import java.util.Scanner;
 // (For this, see `BuildSuffixArray`.)
 public class SearchIndex {
 
+    // Searches the text without an index (see `LinearSearch`).
     public static Iterable<Integer> linearSearch(SuffixArray suffixArray, String value) {
-        return new Iterable<>() {
-            @Override
-            public Iterator<Integer> iterator() {
-                return new Iterator<>() {
-                    int start = 0;
-                    int end = value.length();
-                    @Override
-                    public boolean hasNext() {
-                        while (true) {
-                            if (end > suffixArray.size())
-                                return false;
-                            if (value.equals(suffixArray.text.substring(start, end)))
-                                return true;
-                            start++; end++;
-                        }
-                    }
-                    @Override
-                    public Integer next() {
-                        if (hasNext()) {
-                            end++;
-                            return start++;
-                        }
-                        throw new NoSuchElementException();
-                    }
-                };
-            }
-        };
+        return LinearSearch.search(suffixArray.text, value.getBytes(SuffixArray.ENCODING));
     }
 
     public static Iterable<Integer> binarySearch(SuffixArray suffixArray, String value) {
-        if (suffixArray.index == null || suffixArray.index.length == 0)
+        SuffixIndex index = suffixArray.searchIndex();
+        if (index == null || index.size() == 0)
             throw new AssertionError("Index is not initialised!");
-        int first = BinarySearch.binarySearchFirst(suffixArray, value);
+        int[] range = BinarySearch.binarySearchRange(suffixArray, value);
+        return indexResults(suffixArray, range[0], range[1]);
+    }
+
+    // Returns the range [first, last) of the index (or FM-index) where the suffixes start with the value.
+    public static int[] indexRange(SuffixArray suffixArray, String value) {
+        if (suffixArray.fmIndex != null)
+            return suffixArray.fmIndex.searchRange(value.getBytes(SuffixArray.ENCODING));
+        return BinarySearch.binarySearchRange(suffixArray, value);
+    }
+
+    // Iterates through the text positions of the rows [first, last) of the index (or FM-index).
+    public static Iterable<Integer> indexResults(SuffixArray suffixArray, int first, int last) {
+        FmIndex fmIndex = suffixArray.fmIndex;
+        SuffixIndex index = fmIndex == null ? suffixArray.searchIndex() : null;
         return new Iterable<>() {
             @Override
             public Iterator<Integer> iterator() {
@@ -53,16 +47,12 @@ public class SearchIndex {
                     int i = first;
                     @Override
                     public boolean hasNext() {
-                        if (i < 0 || i >= suffixArray.index.length)
-                            return false;
-                        int start = suffixArray.index[i];
-                        int end = start + value.length();
-                        return value.equals(suffixArray.text.substring(start, end));
+                        return i < last;
                     }
                     @Override
                     public Integer next() {
                         if (hasNext())
-                            return suffixArray.index[i++];
+                            return fmIndex != null ? fmIndex.locate(i++) : index.get(i++);
                         throw new NoSuchElementException();
                     }
                 };
@@ -84,14 +74,29 @@ public class SearchIndex {
             .makeRequired();
         parser.addArgument("--linear-search", "-l", "use linear search (much slower than binary search)")
             .makeTrueOption();
+        parser.addArgument("--fm-index", "-m", "use the FM-index instead of the index (uses less memory)")
+            .makeTrueOption();
         parser.addArgument("--num-matches", "-n", "number of matches to show (default: "+NUM_MATCHES+" matches)")
             .makeInteger().setDefault(NUM_MATCHES);
-        parser.addArgument("--context", "-c", "context to show to the left and right (default: "+CONTEXT+" characters)")
+        parser.addArgument("--skip-matches", "-k", "number of matches to skip before showing any (default: 0)")
+            .makeInteger().setDefault(0);
+        parser.addArgument("--count-only", "-o", "only count the matches, don't show them")
+            .makeTrueOption();
+        parser.addArgument("--documents", "-d", "list the documents that contain the search string, instead of the matches (for a corpus)")
+            .makeTrueOption();
+        parser.addArgument("--context", "-c", "context to show to the left and right (default: "+CONTEXT+" bytes)")
             .makeInteger().setDefault(CONTEXT);
         parser.addArgument("--trim-lines", "-t", "trim each search result to the matching line")
             .makeTrueOption();
         parser.addArgument("--search-string", "-s", "string(s) to search for")
             .makeList();
+        parser.addArgument("--query-file", "-q", "file with one search string per line, to search for all at once");
+        parser.addArgument("--patterns-file", "-F", "file with one pattern per line, to find all their occurrences in one pass over the text (no index needed)");
+        parser.addArgument("--output", "-w", "where to write the results for the query or patterns file (default: <file>.tsv)");
+        parser.addArgument("--threads", "-j", "number of threads for the query file (default: number of cores)")
+            .makeInteger().setDefault(Runtime.getRuntime().availableProcessors());
+        parser.addArgument("--large", "-L", "the text is larger than 2GB (only counts and shows the matches)")
+            .makeTrueOption();
         parser.addArgument("--print-matches", "-p", "whether to print the matches (default: always)")
             .setChoices(printChoices).setDefault("always");
 
@@ -99,11 +104,27 @@ public class SearchIndex {
 
         String textFile = options.getString("textfile");
         boolean linearSearch = options.getBoolean("linear-search");
+        boolean fmIndexSearch = options.getBoolean("fm-index");
         int numMatches = options.getInteger("num-matches");
+        int skipMatches = options.getInteger("skip-matches");
+        boolean countOnly = options.getBoolean("count-only");
+        boolean listDocuments = options.getBoolean("documents");
         int context = options.getInteger("context");
         boolean trimLines = options.getBoolean("trim-lines");
         List<String> searchStrings = options.getStringList("search-string");
         String printChoice = options.getString("print-matches");
+        String queryFile = options.getString("query-file");
+        String patternsFile = options.getString("patterns-file");
+
+        if (options.getInteger("threads") < 1) {
+            System.err.println("\nERROR: the number of threads must be at least 1.\n");
+            System.exit(1);
+        }
+
+        if (options.getBoolean("large")) {
+            searchLarge(textFile, searchStrings, numMatches, skipMatches, countOnly, context);
+            return;
+        }
 
         // Create a stopwatch to time the execution of each phase of the program.
         Stopwatch stopwatch = new Stopwatch();
@@ -117,18 +138,103 @@ public class SearchIndex {
                 "Make sure you specify both the directory and the filename correctly.\n\n", textFile);
             System.exit(1);
         }
-        stopwatch.finished(String.format("Reading %s chars from '%s'", suffixArray.size(), textFile));
+        stopwatch.finished(suffixArray.loadTextTask(), suffixArray.size());
+
+        // Load the document table, if the text is a corpus.
+        try {
+            if (Files.exists(suffixArray.documentsFile)) {
+                suffixArray.loadDocuments();
+                stopwatch.finished(String.format("Loading the table of %d documents", suffixArray.documents.size()));
+            }
+        } catch (IOException e) {
+            System.err.format("\nERROR: %s.\n" +
+                "Make sure you rebuild the corpus after changing the text file.\n\n", e.getMessage());
+            System.exit(1);
+        }
+        if (listDocuments && suffixArray.documents == null) {
+            System.err.format("\nERROR: the text file '%s' is not a corpus of documents.\n\n", textFile);
+            System.exit(1);
+        }
+
+        // Find all patterns in the patterns file with one scan of the text, and write the results to a file.
+        if (patternsFile != null) {
+            List<String> patterns = Files.readAllLines(Path.of(patternsFile), SuffixArray.ENCODING);
+            patterns.removeIf(String::isEmpty);
+            stopwatch.finished(String.format("Reading %d patterns from '%s'", patterns.size(), patternsFile));
+            List<byte[]> keys = new ArrayList<>();
+            for (String pattern : patterns) {
+                keys.add(pattern.getBytes(SuffixArray.ENCODING));
+            }
+            AhoCorasick automaton = new AhoCorasick(keys);
+            stopwatch.finished(String.format("Building the automaton (%d states)", automaton.numStates()));
+            int[] counts = new int[patterns.size()];
+            int[][] positions = new int[patterns.size()][];
+            automaton.findAll(suffixArray.text, numMatches, counts, positions);
+            stopwatch.finished(String.format("Scanning for %d patterns", patterns.size()), suffixArray.size());
+            Path outputFile = Path.of(options.getString("output") != null ? options.getString("output") : patternsFile + ".tsv");
+            AhoCorasick.writeResults(patterns, counts, positions, suffixArray.documents, outputFile);
+            stopwatch.finished(String.format("Writing the results to '%s'", outputFile));
+            return;
+        }
 
         // Load the index if we're using it.
-        if (!linearSearch) {
+        if (fmIndexSearch) {
+            try {
+                suffixArray.loadFmIndex();
+            } catch (NoSuchFileException e) {
+                System.err.format("\nERROR: I cannot find the FM-index file '%s'.\n" +
+                    "Make sure you build the FM-index before using it.\n\n", suffixArray.fmIndexFile);
+                System.exit(1);
+            } catch (IOException e) {
+                System.err.format("\nERROR: %s.\n" +
+                    "Make sure you rebuild the index after changing the text file.\n\n", e.getMessage());
+                System.exit(1);
+            }
+            stopwatch.finished("Loading the FM-index");
+        } else if (!linearSearch) {
             try {
                 suffixArray.loadIndex();
+                // Use the LCP-LR arrays too, if they have been built.
+                // (A word index has none, since it is built from all suffixes.)
+                if (!suffixArray.sparseIndex && Files.exists(suffixArray.lcpLeftFile)) {
+                    suffixArray.loadLcpArray();
+                }
+                // And the bucket table.
+                if (!suffixArray.sparseIndex && Files.exists(suffixArray.bucketFile)) {
+                    suffixArray.loadBucketTable();
+                }
             } catch (NoSuchFileException e) {
                 System.err.format("\nERROR: I cannot find the index file '%s'.\n" +
                     "Make sure you build the index before using it.\n\n", suffixArray.indexFile);
                 System.exit(1);
+            } catch (IOException e) {
+                System.err.format("\nERROR: %s.\n" +
+                    "Make sure you rebuild the index after changing the text file.\n\n", e.getMessage());
+                System.exit(1);
             }
-            stopwatch.finished("Loading the index");
+            stopwatch.finished(suffixArray.sparseIndex ? "Loading the word index" : "Loading the index");
+        }
+
+        // Search for all strings in the query file, and write the results to a file.
+        if (queryFile != null) {
+            if (linearSearch) {
+                System.err.println("\nERROR: a query file can only be used with an index.\n");
+                System.exit(1);
+            }
+            List<String> queries = Files.readAllLines(Path.of(queryFile), SuffixArray.ENCODING);
+            queries.removeIf(String::isEmpty);
+            stopwatch.finished(String.format("Reading %d search strings from '%s'", queries.size(), queryFile));
+            int[][] ranges;
+            try {
+                ranges = BatchSearch.searchRanges(suffixArray, queries, options.getInteger("threads"));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            stopwatch.finished(String.format("Searching for %d strings", queries.size()));
+            Path outputFile = Path.of(options.getString("output") != null ? options.getString("output") : queryFile + ".tsv");
+            BatchSearch.writeResults(suffixArray, queries, ranges, numMatches, outputFile);
+            stopwatch.finished(String.format("Writing the results to '%s'", outputFile));
+            return;
         }
 
         // Set up the search loop.
@@ -179,23 +285,56 @@ public class SearchIndex {
 
             // Search for the first occurrence of the search string.
             System.out.format("Searching for '%s':\n", valueToPrint);
+            if (!linearSearch && suffixArray.sparseIndex && !SuffixArray.isWordChar(value.codePointAt(0))) {
+                System.out.println("Note: the word index only finds search strings that start with a letter or digit.");
+            }
             stopwatch.reset();
-            Iterable<Integer> results = (
-                linearSearch
-                ? linearSearch(suffixArray, value)
-                : binarySearch(suffixArray, value)
-            );
+            int valueLength = value.getBytes(SuffixArray.ENCODING).length;
+            if (!linearSearch) {
+                // With an index, we find the range of all matches directly,
+                // and only have to look up the matches that we show.
+                int[] range = indexRange(suffixArray, value);
+                if (listDocuments) {
+                    int total = printDocuments(suffixArray, indexResults(suffixArray, range[0], range[1]),
+                                               skipMatches, countOnly || !printMatches ? 0 : numMatches);
+                    stopwatch.finished(String.format("Finding %d matches in %d documents", range[1] - range[0], total));
+                    System.out.println();
+                    continue;
+                }
+                int total = range[1] - range[0];
+                int first = Math.min(range[0] + skipMatches, range[1]);
+                int last = countOnly ? first : Math.min(first + numMatches, range[1]);
+                if (printMatches) {
+                    for (int start : indexResults(suffixArray, first, last)) {
+                        printKeywordInContext(suffixArray, start, start + valueLength, context, trimLines);
+                    }
+                }
+                if (first < last) {
+                    stopwatch.finished(String.format("Finding %d matches (showing %d-%d)",
+                                                     total, first - range[0] + 1, last - range[0]));
+                } else {
+                    stopwatch.finished(String.format("Finding %d matches", total));
+                }
+                System.out.println();
+                continue;
+            }
 
-            // Iterate through the search results.
+            // Without an index, we have to iterate through the search results.
+            if (listDocuments) {
+                int total = printDocuments(suffixArray, linearSearch(suffixArray, value),
+                                           skipMatches, countOnly || !printMatches ? 0 : numMatches);
+                stopwatch.finished(String.format("Finding %d documents", total));
+                System.out.println();
+                continue;
+            }
             int ctr = 0;
             String plus = "";
-            for (int start : results) {
-                if (printMatches) {
-                    int end = start + value.length();
-                    printKeywordInContext(suffixArray.text, start, end, context, trimLines);
+            for (int start : linearSearch(suffixArray, value)) {
+                if (printMatches && !countOnly && ctr >= skipMatches) {
+                    printKeywordInContext(suffixArray, start, start + valueLength, context, trimLines);
                 }
                 ctr++;
-                if (ctr >= numMatches) {
+                if (!countOnly && ctr >= skipMatches + numMatches) {
                     plus = "+";
                     break;
                 }
@@ -205,16 +344,104 @@ public class SearchIndex {
         }
     }
 
-    public static void printKeywordInContext(String text, int start, int end, int context, boolean trimLines) {
+    // A simpler search loop for texts that are too large for a `SuffixArray`.
+    public static void searchLarge(String textFile, List<String> searchStrings, int numMatches, int skipMatches,
+                                   boolean countOnly, int context) throws IOException
+    {
+        Stopwatch stopwatch = new Stopwatch();
+        LargeSuffixArray suffixArray = new LargeSuffixArray();
+        try {
+            suffixArray.loadText(textFile);
+            suffixArray.loadIndex();
+        } catch (NoSuchFileException e) {
+            System.err.format("\nERROR: I cannot find the file '%s'.\n" +
+                "Make sure you build the index with --large before using it.\n\n", e.getFile());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.format("\nERROR: %s.\n" +
+                "Make sure you rebuild the index after changing the text file.\n\n", e.getMessage());
+            System.exit(1);
+        }
+        stopwatch.finished(String.format("Loading the index of %s bytes from '%s'", suffixArray.size(), textFile));
+
+        System.out.println();
+        Scanner input;
+        String prompt;
+        if (searchStrings != null && !searchStrings.isEmpty()) {
+            input = new Scanner(String.join("\n", searchStrings));
+            prompt = "";
+        } else {
+            input = new Scanner(System.in);
+            prompt = "Search key (ENTER to quit): ";
+        }
+        LargeText text = suffixArray.text;
+        while (true) {
+            System.out.print(prompt);
+            System.out.flush();
+            if (!input.hasNextLine())
+                break;
+            String value = input.nextLine();
+            if (value.isEmpty())
+                break;
+            System.out.format("Searching for '%s':\n", value.replaceAll("(\\n|\\r)+", " "));
+            stopwatch.reset();
+            byte[] key = value.getBytes(SuffixArray.ENCODING);
+            long[] range = suffixArray.binarySearchRange(key);
+            long first = Math.min(range[0] + skipMatches, range[1]);
+            long last = countOnly ? first : Math.min(first + numMatches, range[1]);
+            for (long i = first; i < last; i++) {
+                long start = suffixArray.index.get(i);
+                long end = start + key.length;
+                String prefix = text.substring(text.charStart(Math.max(0, start - context)), start);
+                String suffix = text.substring(end, text.charStart(Math.min(text.size(), end + context)));
+                System.out.format("%8d:  %" + context + "s|%s|%-" + context + "s\n", start,
+                                  prefix.replaceAll("\\n", " ").replaceAll("\\r", ""),
+                                  value.replaceAll("\\n", " ").replaceAll("\\r", ""),
+                                  suffix.replaceAll("\\n", " ").replaceAll("\\r", ""));
+            }
+            if (first < last) {
+                stopwatch.finished(String.format("Finding %d matches (showing %d-%d)",
+                                                 range[1] - range[0], first - range[0] + 1, last - range[0]));
+            } else {
+                stopwatch.finished(String.format("Finding %d matches", range[1] - range[0]));
+            }
+            System.out.println();
+        }
+    }
+
+    // Prints the names of the documents that contain the matches, after skipping `skip` documents,
+    // and returns the number of documents.
+    public static int printDocuments(SuffixArray sa, Iterable<Integer> matches, int skip, int numDocuments) {
+        BitSet documents = sa.documents.documentsOf(matches);
+        int i = 0;
+        for (int doc = documents.nextSetBit(0); doc >= 0 && i < skip + numDocuments; doc = documents.nextSetBit(doc + 1)) {
+            if (i++ >= skip) {
+                System.out.format("  %s\n", sa.documents.name(doc));
+            }
+        }
+        return documents.cardinality();
+    }
+
+    public static void printKeywordInContext(SuffixArray sa, int start, int end, int context, boolean trimLines) {
         // Print one match (between positions [start...end-1]),
         // together with `args.context` bytes of context before and after.
+        // The context is adjusted so that it doesn't split a utf-8 encoded character.
+        // In a corpus, the context stays within the document, and the position is within the document.
 
-        int contextStart = Math.max(0, start - context);
-        int contextEnd = Math.min(text.length(), end + context);
+        int textStart = 0, textEnd = sa.size();
+        String location = String.valueOf(start);
+        if (sa.documents != null) {
+            int doc = sa.documents.documentOf(start);
+            textStart = sa.documents.start(doc);
+            textEnd = sa.documents.end(doc);
+            location = sa.documents.location(start);
+        }
+        int contextStart = sa.charStart(Math.max(textStart, start - context));
+        int contextEnd = Math.max(end, sa.charStart(Math.min(textEnd, end + context)));
 
-        String prefix = text.substring(contextStart, start);
-        String found  = text.substring(start, end);
-        String suffix = text.substring(end, contextEnd);
+        String prefix = sa.substring(contextStart, start);
+        String found  = sa.substring(start, end);
+        String suffix = sa.substring(end, contextEnd);
 
         if (trimLines) {
             int i;
@@ -230,6 +457,6 @@ public class SearchIndex {
         prefix = prefix.replaceAll("\\n", " ").replaceAll("\\r", "");
         suffix = suffix.replaceAll("\\n", " ").replaceAll("\\r", "");
 
-        System.out.format("%8d:  %" + context + "s|%s|%-" + context + "s\n", start, prefix, found, suffix);
+        System.out.format("%8s:  %" + context + "s|%s|%-" + context + "s\n", location, prefix, found, suffix);
     }
 }
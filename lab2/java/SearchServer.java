@@ -0,0 +1,151 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// This class is designed it be run.
+// It is a search server for the specified text file, which loads the text
+// and the index once, and then answers searches from many clients at the same time.
+// The clients connect to a TCP port on localhost, and send one search string per line.
+// Each answer is one line: the search string, the number of matches, and the text
+// positions of the first matches (separated by tabs and commas, like `BatchSearch`).
+// In a corpus, the positions are "name:offset" within each document.
+// An empty line asks for the latency statistics of all requests so far.
+public class SearchServer {
+
+    public static final int PORT = 4711;
+
+    private final SuffixArray suffixArray;
+    private final int numMatches;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    public SearchServer(SuffixArray suffixArray, int numMatches) {
+        this.suffixArray = suffixArray;
+        this.numMatches = numMatches;
+    }
+
+    // Accepts clients until the program is killed. Each client is served by its own thread.
+    // The text and the index are never modified, so the threads can share them freely.
+    public void serve(int port) throws IOException {
+        ExecutorService executor = newExecutor();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.format("Listening on %s:%d\n", server.getInetAddress().getHostAddress(), server.getLocalPort());
+            while (true) {
+                Socket client = server.accept();
+                executor.execute(() -> handle(client));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Virtual threads are cheaper than platform threads, but they need Java 21.
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(Socket client) {
+        try (client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), SuffixArray.ENCODING));
+             PrintWriter out = new PrintWriter(client.getOutputStream(), false, SuffixArray.ENCODING)) {
+            String value;
+            while ((value = in.readLine()) != null) {
+                if (value.isEmpty()) {
+                    out.print(latencies);
+                } else {
+                    out.println(search(value));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.format("ERROR: %s\n", e.getMessage());
+        }
+    }
+
+    // Searches for one string, and records how long it took.
+    public String search(String value) {
+        long start = System.nanoTime();
+        int[] range = SearchIndex.indexRange(suffixArray, value);
+        String result = BatchSearch.formatResult(suffixArray, value, range[0], range[1], numMatches);
+        latencies.record(System.nanoTime() - start);
+        return result;
+    }
+
+    public LatencyHistogram latencies() {
+        return latencies;
+    }
+
+
+    public static void main(String[] args) throws IOException {
+
+        CommandParser parser = new CommandParser("SearchServer", "Search server for text files.");
+        parser.addArgument("--textfile", "-f", "text file (utf-8 encoded)")
+            .makeRequired();
+        parser.addArgument("--fm-index", "-m", "use the FM-index instead of the index (uses less memory)")
+            .makeTrueOption();
+        parser.addArgument("--num-matches", "-n", "number of match positions to send (default: "+SearchIndex.NUM_MATCHES+")")
+            .makeInteger().setDefault(SearchIndex.NUM_MATCHES);
+        parser.addArgument("--port", "-P", "port to listen to on localhost (default: "+PORT+")")
+            .makeInteger().setDefault(PORT);
+
+        CommandParser.Namespace options = parser.parseArgs(args);
+
+        String textFile = options.getString("textfile");
+        boolean fmIndexSearch = options.getBoolean("fm-index");
+
+        // Create a stopwatch to time the execution of each phase of the program.
+        Stopwatch stopwatch = new Stopwatch();
+
+        // Read the text file and the index, once and for all.
+        SuffixArray suffixArray = new SuffixArray();
+        try {
+            suffixArray.loadText(textFile);
+            stopwatch.finished(suffixArray.loadTextTask(), suffixArray.size());
+            // Load the document table, if the text is a corpus.
+            if (Files.exists(suffixArray.documentsFile)) {
+                suffixArray.loadDocuments();
+                stopwatch.finished(String.format("Loading the table of %d documents", suffixArray.documents.size()));
+            }
+            if (fmIndexSearch) {
+                suffixArray.loadFmIndex();
+                stopwatch.finished("Loading the FM-index");
+            } else {
+                suffixArray.loadIndex();
+                // Use the LCP-LR arrays too, if they have been built.
+                // (A word index has none, since it is built from all suffixes.)
+                if (!suffixArray.sparseIndex && Files.exists(suffixArray.lcpLeftFile)) {
+                    suffixArray.loadLcpArray();
+                }
+                // And the bucket table.
+                if (!suffixArray.sparseIndex && Files.exists(suffixArray.bucketFile)) {
+                    suffixArray.loadBucketTable();
+                }
+                stopwatch.finished(suffixArray.sparseIndex ? "Loading the word index" : "Loading the index");
+            }
+        } catch (NoSuchFileException e) {
+            System.err.format("\nERROR: I cannot find the file '%s'.\n" +
+                "Make sure you build the index before using it.\n\n", e.getFile());
+            System.exit(1);
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.format("\nERROR: %s.\n" +
+                "Make sure you rebuild the index after changing the text file.\n\n", e.getMessage());
+            System.exit(1);
+        }
+
+        SearchServer server = new SearchServer(suffixArray, options.getInteger("num-matches"));
+        // Print the statistics when the server is stopped (e.g., with Ctrl-C).
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print("\n" + server.latencies())));
+        server.serve(options.getInteger("port"));
+    }
+}
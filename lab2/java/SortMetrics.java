@@ -0,0 +1,173 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Counters for finding out why sorting is slow: bad pivots, long common prefixes,
+ * or just many comparisons. They are off by default, and turned on by `start()`.
+ *
+ * The sorters report comparisons (with the number of characters they read),
+ * character reads outside comparisons (the multikey sorters), swaps, partitions,
+ * and how deep they recurse. The counters can be updated from many threads.
+ *
+ * For each partitioning we record how large its largest part is, in tenths of the range.
+ * Good pivots give a largest part of about a half (a third for multikey partitioning),
+ * and bad pivots give parts close to the whole range.
+ *
+ * When a Java Flight Recorder recording is running, `stop()` also records
+ * the counters as a "suffixarray.Sort" event.
+ */
+public class SortMetrics {
+    static final int BALANCE_BUCKETS = 10;
+
+    static boolean enabled;
+
+    static final LongAdder comparisons = new LongAdder();
+    static final LongAdder charactersInspected = new LongAdder();
+    static final LongAdder swaps = new LongAdder();
+    static final LongAdder partitions = new LongAdder();
+    static final LongAdder partitionedElements = new LongAdder();
+    static final LongAdder[] balance = new LongAdder[BALANCE_BUCKETS];
+    static final AtomicInteger maxDepth = new AtomicInteger();
+    // The current recursion depth of each thread.
+    static final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+
+    private static SortEvent event;
+
+    static {
+        for (int b = 0; b < BALANCE_BUCKETS; b++) {
+            balance[b] = new LongAdder();
+        }
+    }
+
+    // Resets the counters and starts counting.
+    public static void start() {
+        comparisons.reset();
+        charactersInspected.reset();
+        swaps.reset();
+        partitions.reset();
+        partitionedElements.reset();
+        for (LongAdder bucket : balance) {
+            bucket.reset();
+        }
+        maxDepth.set(0);
+        event = new SortEvent();
+        event.begin();
+        enabled = true;
+    }
+
+    // Stops counting, and records the JFR event (if a recording is running).
+    public static void stop(String algorithm, int size) {
+        enabled = false;
+        event.end();
+        if (event.shouldCommit()) {
+            event.algorithm = algorithm;
+            event.size = size;
+            event.comparisons = comparisons.sum();
+            event.charactersInspected = charactersInspected.sum();
+            event.swaps = swaps.sum();
+            event.partitions = partitions.sum();
+            event.maxDepth = maxDepth.get();
+            event.commit();
+        }
+    }
+
+    // One suffix comparison, which read this many characters from each suffix.
+    public static void comparison(int characters) {
+        if (enabled) {
+            comparisons.increment();
+            charactersInspected.add(characters);
+        }
+    }
+
+    // Character reads that are not part of a comparison.
+    public static void characters(int characters) {
+        if (enabled) {
+            charactersInspected.add(characters);
+        }
+    }
+
+    public static void swap() {
+        if (enabled) {
+            swaps.increment();
+        }
+    }
+
+    // A range of `size` elements was partitioned, and the largest part has `largestPart` elements.
+    public static void partition(int size, int largestPart) {
+        if (enabled) {
+            partitions.increment();
+            partitionedElements.add(size);
+            balance[Math.min(BALANCE_BUCKETS - 1, (int) ((long) largestPart * BALANCE_BUCKETS / size))].increment();
+        }
+    }
+
+    // Called when a recursive sorting method is entered, and when it returns.
+    public static void enter() {
+        if (enabled) {
+            int d = ++depth.get()[0];
+            if (d > maxDepth.get()) {
+                maxDepth.accumulateAndGet(d, Math::max);
+            }
+        }
+    }
+
+    public static void exit() {
+        if (enabled) {
+            depth.get()[0]--;
+        }
+    }
+
+    /**
+     * Returns a report of the counters, one per line.
+     */
+    public static String summary() {
+        long numComparisons = comparisons.sum();
+        long numPartitions = partitions.sum();
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("  comparisons:           %,d\n", numComparisons));
+        report.append(String.format("  characters inspected:  %,d\n", charactersInspected.sum()));
+        if (numComparisons > 0) {
+            report.append(String.format("  characters/comparison: %.2f\n", (double) charactersInspected.sum() / numComparisons));
+        }
+        report.append(String.format("  swaps:                 %,d\n", swaps.sum()));
+        report.append(String.format("  partitions:            %,d\n", numPartitions));
+        if (numPartitions > 0) {
+            report.append(String.format("  elements/partition:    %.1f\n", (double) partitionedElements.sum() / numPartitions));
+            report.append("  largest part of each partition:\n");
+            for (int b = 0; b < BALANCE_BUCKETS; b++) {
+                long n = balance[b].sum();
+                if (n > 0) {
+                    report.append(String.format("    %3d-%3d%%: %,d\n", 100 * b / BALANCE_BUCKETS, 100 * (b + 1) / BALANCE_BUCKETS, n));
+                }
+            }
+        }
+        report.append(String.format("  max recursion depth:   %,d\n", maxDepth.get()));
+        return report.toString();
+    }
+
+    @Name("suffixarray.Sort")
+    @Label("Suffix Sorting")
+    @Category("Suffix Array")
+    @Description("Counters from building a suffix array index")
+    static class SortEvent extends Event {
+        @Label("Algorithm")
+        String algorithm;
+        @Label("Text Size")
+        int size;
+        @Label("Comparisons")
+        long comparisons;
+        @Label("Characters Inspected")
+        long charactersInspected;
+        @Label("Swaps")
+        long swaps;
+        @Label("Partitions")
+        long partitions;
+        @Label("Max Recursion Depth")
+        int maxDepth;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+// This class is designed to be run.
+// It benchmarks all suffix sorters in `BuildIndex` with all pivot selectors,
+// on texts of different sizes and kinds:
+//  * random: random text over an alphabet of the given size
+//  * natural: the beginning of a natural language text file (e.g., from the bnc texts)
+//  * fibonacci: the Fibonacci word "abaababaabaab...", which is very repetitive
+//  * single: only the letter "A", which is the worst case for many sorters
+//
+// For each combination it reports the median time and throughput,
+// how many bytes were allocated and how long the garbage collector ran.
+//
+// Note: this is a simple timing loop with warmup rounds, not a JMH benchmark.
+// If a sorter would be slower than the time budget for the next larger text
+// of the same kind, it is skipped for the larger texts.
+public class SorterBenchmark {
+    static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    static final String[] TEXT_KINDS = {"random", "natural", "fibonacci", "single"};
+    static final String NO_PIVOT = "-";
+
+    // Allocation is measured per thread, so we sum over all threads (including the fork/join pool).
+    static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    static long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        long total = 0;
+        for (long allocated : sunThreads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    static String generateText(String kind, int size, int alphabetSize, byte[] naturalText) {
+        switch (kind) {
+        case "random":
+            Random random = new Random(size);
+            char[] chars = new char[size];
+            for (int i = 0; i < size; i++) {
+                chars[i] = ALPHABET.charAt(random.nextInt(alphabetSize));
+            }
+            return new String(chars);
+        case "natural":
+            int end = Math.min(size, naturalText.length);
+            // Don't split a utf-8 encoded character.
+            while (0 < end && end < naturalText.length && (naturalText[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            return new String(naturalText, 0, end, SuffixArray.ENCODING);
+        case "fibonacci":
+            StringBuilder previous = new StringBuilder("a"), current = new StringBuilder("ab");
+            while (current.length() < size) {
+                StringBuilder next = new StringBuilder(current).append(previous);
+                previous = current;
+                current = next;
+            }
+            return current.substring(0, size);
+        default:
+            return "A".repeat(size);
+        }
+    }
+
+    // The result of running one sorter on one text.
+    static class Result {
+        double[] seconds;
+        long allocated;
+        long gcTime;
+        String error;
+    }
+
+    // If the warmup round is already slower than the time budget, it's the only round.
+    static Result run(SuffixArray sa, SuffixSorter sorter, int rounds, int timeBudget) {
+        Result result = new Result();
+        result.seconds = new double[rounds];
+        try {
+            long warmupStart = System.nanoTime();
+            sorter.buildIndex();
+            double warmup = (System.nanoTime() - warmupStart) / 1e9;
+            if (warmup > timeBudget) {
+                result.seconds = new double[] {warmup};
+                return result;
+            }
+            long allocatedBefore = allocatedBytes();
+            long gcBefore = gcMillis();
+            for (int r = 0; r < rounds; r++) {
+                sa.index = null;
+                long start = System.nanoTime();
+                sorter.buildIndex();
+                result.seconds[r] = (System.nanoTime() - start) / 1e9;
+            }
+            // Threads that finished in the meantime are not counted, so this can even be negative.
+            result.allocated = Math.max(0, allocatedBytes() - allocatedBefore) / rounds;
+            result.gcTime = (gcMillis() - gcBefore) / rounds;
+        } catch (StackOverflowError e) {
+            result.error = "stack overflow";
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        CommandParser parser = new CommandParser("SorterBenchmark", "Benchmark the suffix sorters.");
+        parser.addArgument("--algorithms", "-a", "sorting algorithms (default: all)")
+            .makeList();
+        parser.addArgument("--pivots", "-p", "pivot selectors, for the algorithms that use them (default: all)")
+            .makeList();
+        parser.addArgument("--texts", "-t", "kinds of text: random, natural, fibonacci, single (default: all)")
+            .makeList();
+        parser.addArgument("--sizes", "-s", "text sizes (default: 10000 100000 1000000)")
+            .makeInteger().makeList();
+        parser.addArgument("--alphabet-sizes", "-k", "alphabet sizes for random texts (default: 2 4 26)")
+            .makeInteger().makeList();
+        parser.addArgument("--textfile", "-f", "natural language text file (utf-8 encoded)");
+        parser.addArgument("--rounds", "-r", "number of timed rounds, after one warmup round (default: 3)")
+            .makeInteger().setDefault(3);
+        parser.addArgument("--time-budget", "-b", "skip larger texts when a round would take longer than this (default: 10 seconds)")
+            .makeInteger().setDefault(10);
+
+        CommandParser.Namespace options = parser.parseArgs(args);
+
+        Set<String> algorithms = new TreeSet<>(orDefault(options.getStringList("algorithms"), BuildIndex.suffixSorters.keySet()));
+        Set<String> pivots = new TreeSet<>(orDefault(options.getStringList("pivots"), BuildIndex.pivotSelectors.keySet()));
+        List<String> textKinds = orDefault(options.getStringList("texts"), Arrays.asList(TEXT_KINDS));
+        List<Object> sizes = orDefault(options.getList("sizes"), List.of(10_000, 100_000, 1_000_000));
+        List<Object> alphabetSizes = orDefault(options.getList("alphabet-sizes"), List.of(2, 4, 26));
+        int rounds = options.getInteger("rounds");
+        int timeBudget = options.getInteger("time-budget");
+
+        byte[] naturalText = null;
+        if (textKinds.contains("natural")) {
+            if (options.getString("textfile") == null) {
+                System.err.println("WARNING: no text file given, skipping the natural language texts.");
+            } else {
+                naturalText = Files.readAllBytes(Path.of(options.getString("textfile")));
+            }
+        }
+
+        System.out.format("%-12s %10s  %-18s %-9s %10s %10s %12s %8s\n",
+                          "text", "size", "algorithm", "pivot", "seconds", "MB/s", "alloc MB", "gc ms");
+        SuffixArray sa = new SuffixArray();
+        ProgressBar.visible = false;
+        for (String kind : textKinds) {
+            if (kind.equals("natural") && naturalText == null) {
+                continue;
+            }
+            List<Object> alphabets = kind.equals("random") ? alphabetSizes : List.of(0);
+            for (Object alphabetSize : alphabets) {
+                String textName = kind.equals("random") ? kind + "-" + alphabetSize : kind;
+                // The sorters (and pivots) that would be too slow for the next text of the same kind.
+                // Many of them are quadratic for repetitive texts, so we assume that the time grows that fast.
+                Set<String> tooSlow = new HashSet<>();
+                for (int s = 0; s < sizes.size(); s++) {
+                    int size = (Integer) sizes.get(s);
+                    double growth = s + 1 < sizes.size() ? (double) (Integer) sizes.get(s + 1) / size : 1;
+                    sa.setText(generateText(kind, size, Math.min((Integer) alphabetSize, ALPHABET.length()), naturalText));
+                    for (String algorithm : algorithms) {
+                        Function<SuffixArray, SuffixSorter> constructor = BuildIndex.suffixSorters.get(algorithm);
+                        if (constructor == null) {
+                            System.err.format("ERROR: unknown algorithm '%s'\n", algorithm);
+                            System.exit(1);
+                        }
+                        SuffixSorter sorter = constructor.apply(sa);
+                        for (String pivot : sorter.usesPivotSelector() ? pivots : Set.of(NO_PIVOT)) {
+                            String name = algorithm + " " + pivot;
+                            if (tooSlow.contains(name)) {
+                                continue;
+                            }
+                            if (!pivot.equals(NO_PIVOT)) {
+                                sorter.setPivotSelector(BuildIndex.pivotSelectors.get(pivot));
+                            }
+                            Result result = run(sa, sorter, rounds, timeBudget);
+                            sa.index = null;
+                            if (result.error != null) {
+                                System.out.format("%-12s %10d  %-18s %-9s %s\n", textName, sa.size(), algorithm, pivot, result.error);
+                                tooSlow.add(name);
+                                continue;
+                            }
+                            double[] sorted = result.seconds.clone();
+                            Arrays.sort(sorted);
+                            double median = sorted[sorted.length / 2];
+                            System.out.format("%-12s %10d  %-18s %-9s %10.3f %10.1f %12.1f %8d\n",
+                                              textName, sa.size(), algorithm, pivot, median,
+                                              sa.size() / 1e6 / Math.max(median, 1e-9),
+                                              result.allocated / 1e6, result.gcTime);
+                            if (median * growth * growth > timeBudget) {
+                                tooSlow.add(name);
+                            }
+                        }
+                    }
+                }
+                for (String name : new TreeSet<>(tooSlow)) {
+                    System.out.format("%-12s %10s  %-28s skipped for larger texts\n", textName, "", name);
+                }
+            }
+        }
+    }
+
+    static <T> List<T> orDefault(List<T> values, java.util.Collection<T> defaults) {
+        return values == null || values.isEmpty() ? List.copyOf(defaults) : values;
+    }
+}
@@ -34,5 +34,15 @@ public class Stopwatch {
        this.reset();
    }
 
+    /**
+     * Prints a timing report with the throughput of processing the
+     * given number of bytes, and resets the elapsed time.
+     */
+    public void finished(String task, long bytes) {
+        double seconds = this.elapsedTime();
+        System.out.printf("%s took %.2f seconds (%.1f MB/s).\n", task, seconds, bytes / 1e6 / Math.max(seconds, 0.001));
+        this.reset();
+    }
+
 }
 
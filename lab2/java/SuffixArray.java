@@ -1,40 +1,63 @@
 
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.ObjectOutputStream;
-import java.io.Reader;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPInputStream;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
+// The text is stored as its utf-8 encoded bytes, so all positions
+// (in the index, and in search results) are byte positions.
 public class SuffixArray {
-    String text;
+    byte[] text;
     int[] index;
+    SuffixIndex mappedIndex;
+    LcpArray lcpArray;
+    FmIndex fmIndex;
+    BucketTable bucketTable;
+    DocumentTable documents;
 
     Path textFile;
     Path indexFile;
+    Path lcpLeftFile;
+    Path lcpRightFile;
+    Path fmIndexFile;
+    Path bucketFile;
+    Path documentsFile;
+
+    // Write the index file in the packed format, with only as many bits per entry as needed.
+    boolean packedIndex;
+    // The index only has the suffixes that start a word (see `wordStarts`).
+    boolean sparseIndex;
 
     // Internal constants.
     static final String INDEX_SUFFIX = ".jix";
+    static final String LCP_LEFT_SUFFIX = ".lcpl";
+    static final String LCP_RIGHT_SUFFIX = ".lcpr";
+    static final String FM_INDEX_SUFFIX = ".fmi";
+    static final String BUCKET_SUFFIX = ".bkt";
+    static final String DOCUMENTS_SUFFIX = ".docs";
     static final Charset ENCODING = StandardCharsets.UTF_8;
-    static final int GZIP_BUFFERSIZE = 16384;
 
     public void setText(String text) {
-        this.text = text;
+        this.text = text.getBytes(ENCODING);
         this.textFile = null;
         this.indexFile = null;
+        this.lcpLeftFile = null;
+        this.lcpRightFile = null;
+        this.fmIndexFile = null;
+        this.bucketFile = null;
+        this.documentsFile = null;
         this.index = null;
+        this.mappedIndex = null;
+        this.lcpArray = null;
+        this.fmIndex = null;
+        this.bucketTable = null;
+        this.documents = null;
     }
 
     public void generateRandomText(int size, String alphabet) {
@@ -49,77 +72,216 @@ public class SuffixArray {
     public void loadText(String textFile) throws IOException {
         this.textFile = Path.of(textFile);
         this.indexFile = Path.of(textFile + INDEX_SUFFIX);
+        this.lcpLeftFile = Path.of(textFile + LCP_LEFT_SUFFIX);
+        this.lcpRightFile = Path.of(textFile + LCP_RIGHT_SUFFIX);
+        this.fmIndexFile = Path.of(textFile + FM_INDEX_SUFFIX);
+        this.bucketFile = Path.of(textFile + BUCKET_SUFFIX);
+        this.documentsFile = Path.of(textFile + DOCUMENTS_SUFFIX);
         if (textFile.endsWith(".gz")) {
-            this.text = readGZippedTextfile();
+            this.text = GzipFile.read(this.textFile);
         } else {
-            this.text = Files.readString(this.textFile, ENCODING);
+            this.text = Files.readAllBytes(this.textFile);
         }
         this.index = null;
+        this.mappedIndex = null;
+        this.lcpArray = null;
+        this.fmIndex = null;
+        this.bucketTable = null;
+        this.documents = null;
     }
 
-    private String readGZippedTextfile() throws IOException {
-        try (
-            InputStream compresesed = Files.newInputStream(this.textFile);
-            InputStream uncompressed = new GZIPInputStream(compresesed);
-            Reader reader = new InputStreamReader(uncompressed, ENCODING);
-            Writer writer = new StringWriter();
-        ) {
-            char[] buffer = new char[GZIP_BUFFERSIZE];
-            int length;
-            while ((length = reader.read(buffer)) > 0) {
-                writer.write(buffer, 0, length);
-            }
-            return writer.toString();
+    // Describes what `loadText` did, for the timing report. A compressed text file is mapped
+    // and streamed into the inflater, so then the time is the time of decompressing it.
+    public String loadTextTask() throws IOException {
+        if (this.textFile.toString().endsWith(".gz")) {
+            return String.format("Decompressing %s bytes (%s compressed) from '%s'",
+                                 size(), Files.size(this.textFile), this.textFile);
         }
+        return String.format("Reading %s bytes from '%s'", size(), this.textFile);
     }
 
     public void loadIndex() throws IOException, ClassNotFoundException {
+        if (IndexFile.isIndexFile(this.indexFile)) {
+            this.index = null;
+            this.mappedIndex = IndexFile.map(this.indexFile, this);
+            this.sparseIndex = IndexFile.isSparse(this.indexFile);
+            return;
+        }
+        // Old index files are a serialised int[].
         try (ObjectInputStream stream = new ObjectInputStream(
                 Files.newInputStream(this.indexFile)
             ))
         {
             this.index = (int[]) stream.readObject();
+            this.mappedIndex = null;
+            this.sparseIndex = false;
         }
     }
 
+    // Maps the LCP-LR arrays, which make binary search faster for long search strings.
+    public void loadLcpArray() throws IOException {
+        this.lcpArray = LcpArray.load(this.lcpLeftFile, this.lcpRightFile, this);
+    }
+
+    // Loads the bucket table, which narrows down the range for binary search.
+    public void loadBucketTable() throws IOException {
+        this.bucketTable = BucketTable.load(this.bucketFile, this);
+    }
+
+    // Loads the document table, if the text is a corpus of many documents.
+    public void loadDocuments() throws IOException {
+        this.documents = DocumentTable.load(this.documentsFile, this);
+    }
+
+    // Loads the FM-index, which can be searched without loading the index.
+    public void loadFmIndex() throws IOException {
+        this.fmIndex = FmIndex.load(this.fmIndexFile, this);
+    }
+
+    // The index to search in: either the one in memory, or the one mapped from disk.
+    public SuffixIndex searchIndex() {
+        return this.index != null ? SuffixIndex.of(this.index) : this.mappedIndex;
+    }
+
     public int size() {
-        return this.text.length();
+        return this.text.length;
     }
 
+    // Decodes the text between the given byte positions.
+    public String substring(int start, int end) {
+        return new String(this.text, start, end - start, ENCODING);
+    }
+
+    public String substring(int start) {
+        return substring(start, size());
+    }
+
+    // Moves a position backwards to the start of the utf-8 encoded character it is in.
+    public int charStart(int pos) {
+        while (0 < pos && pos < size() && (this.text[pos] & 0xC0) == 0x80) {
+            pos--;
+        }
+        return pos;
+    }
+
+    // Word characters are letters and digits in any script (and combining marks, for decomposed
+    // accents). Everything else separates words, also non-ASCII punctuation and spaces,
+    // such as curly quotes, dashes and no-break spaces.
+    static boolean isWordChar(int codePoint) {
+        return Character.isLetterOrDigit(codePoint) || Character.getType(codePoint) == Character.NON_SPACING_MARK;
+    }
+
+    // Decodes the utf-8 encoded character that starts at the position,
+    // or returns -1 if the bytes are not valid utf-8 (which is never a word character).
+    static int codePointAt(byte[] bytes, int pos) {
+        int b = bytes[pos] & 0xFF;
+        if (b < 0x80) {
+            return b;
+        }
+        int length = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+        if (length == 1 || pos + length > bytes.length) {
+            return -1;
+        }
+        int codePoint = b & (0x3F >> (length - 1));
+        for (int i = 1; i < length; i++) {
+            int c = bytes[pos + i];
+            if ((c & 0xC0) != 0x80) {
+                return -1;
+            }
+            codePoint = codePoint << 6 | (c & 0x3F);
+        }
+        return codePoint;
+    }
+
+    // Returns true if a word starts at the position: the start of a word character,
+    // after a non-word character (or first).
+    public boolean isWordStart(int pos) {
+        if ((this.text[pos] & 0xC0) == 0x80 || !isWordChar(codePointAt(this.text, pos))) {
+            return false;
+        }
+        return pos == 0 || !isWordChar(codePointAt(this.text, charStart(pos - 1)));
+    }
+
+    // Returns all positions where a word starts, in order.
+    // A sparse index only has these suffixes, which is enough for searching words and phrases.
+    public int[] wordStarts() {
+        return wordStarts(0, size());
+    }
+
+    // The same, but only the positions in [start...end-1].
+    public int[] wordStarts(int start, int end) {
+        int count = 0;
+        for (int pos = start; pos < end; pos++) {
+            if (isWordStart(pos)) {
+                count++;
+            }
+        }
+        int[] starts = new int[count];
+        for (int pos = start, i = 0; i < count; pos++) {
+            if (isWordStart(pos)) {
+                starts[i++] = pos;
+            }
+        }
+        return starts;
+    }
+
+    // Most comparisons are decided within the first few bytes, so we compare
+    // these directly. Longer common prefixes are skipped with `Arrays.mismatch`,
+    // which is an intrinsic that compares 8 bytes (or a vector register) per step.
+    // This matters for repetitive texts, where suffixes share long prefixes.
+    static final int SHORT_PREFIX = 8;
+
     public int compareSuffixes(int suffix1, int suffix2) {
         if (suffix1 == suffix2) {
+            SortMetrics.comparison(0);
             return 0;
         }
-        int end = text.length();
-        while (suffix1 < end && suffix2 < end) {
-            char ch1 = text.charAt(suffix1);
-            char ch2 = text.charAt(suffix2);
-            if (ch1 != ch2) {
-                return ch1 < ch2 ? -1 : 1;
-            }
-            suffix1++;
-            suffix2++;
+        byte ch1 = text[suffix1], ch2 = text[suffix2];
+        if (ch1 != ch2) {
+            SortMetrics.comparison(1);
+            return Byte.compareUnsigned(ch1, ch2) < 0 ? -1 : 1;
         }
-        return suffix1 > suffix2 ? -1 : 1;
+        int length = text.length - Math.max(suffix1, suffix2);
+        int i = mismatch(suffix1, text, suffix2, length);
+        SortMetrics.comparison(i < 0 ? length : i + 1);
+        if (i < 0) {
+            // The shorter suffix is a prefix of the longer one.
+            return suffix1 > suffix2 ? -1 : 1;
+        }
+        return Byte.compareUnsigned(text[suffix1 + i], text[suffix2 + i]) < 0 ? -1 : 1;
     }
 
     public int compareSuffixToValue(int suffix, String value) {
-        int end = text.length();
-        for (int i = 0; i < value.length(); i++) {
-            if (suffix + i >= end) {
-                return -1;
-            }
-            char ch1 = text.charAt(suffix + i);
-            char ch2 = value.charAt(i);
-            if (ch1 != ch2) {
-                return ch1 < ch2 ? -1 : 1;
+        return compareSuffixToValue(suffix, value.getBytes(ENCODING));
+    }
+
+    public int compareSuffixToValue(int suffix, byte[] value) {
+        int length = Math.min(value.length, text.length - suffix);
+        int i = mismatch(suffix, value, 0, length);
+        if (i < 0) {
+            // The suffix is shorter than the value, but is a prefix of it.
+            return length < value.length ? -1 : 0;
+        }
+        return Byte.compareUnsigned(text[suffix + i], value[i]) < 0 ? -1 : 1;
+    }
+
+    // Returns the first offset < length where text[pos+offset] != other[otherPos+offset], or -1.
+    private int mismatch(int pos, byte[] other, int otherPos, int length) {
+        int quick = Math.min(length, SHORT_PREFIX);
+        for (int i = 0; i < quick; i++) {
+            if (text[pos + i] != other[otherPos + i]) {
+                return i;
             }
         }
-        return 0;
+        if (length <= SHORT_PREFIX) {
+            return -1;
+        }
+        int i = Arrays.mismatch(text, pos + quick, pos + length, other, otherPos + quick, otherPos + length);
+        return i < 0 ? -1 : quick + i;
     }
 
     public void print(String header) {
-        this.print(header, new int[]{0, size()}, "  ");
+        this.print(header, new int[]{0, this.index.length}, "  ");
     }
 
     public void print(String header, int[] breakpoints, String indicators) {
@@ -141,8 +303,9 @@ public class SuffixArray {
                 startRange = endRange;
             }
             endRange = k + context;
+            // A word index only has some of the suffixes, so we stop at the end of the index, not the text.
             for (int i = startRange; i < endRange; i++) {
-                if (0 <= i && i < size()) {
+                if (0 <= i && i < this.index.length) {
                     char ind = indicators.charAt(0);
                     for (int bp = 0; bp < breakpoints.length; bp++) {
                         if (i >= breakpoints[bp]) 
@@ -151,8 +314,8 @@ public class SuffixArray {
                     int suffixPos = this.index[i];
                     String suffixString = (
                         suffixPos + maxSuffix <= size()
-                        ? this.text.substring(suffixPos, suffixPos+maxSuffix) + "..."
-                        : this.text.substring(suffixPos)
+                        ? this.substring(suffixPos, charStart(suffixPos+maxSuffix)) + "..."
+                        : this.substring(suffixPos)
                     );
                     suffixString = suffixString.replaceAll("\n", "\\\\n").replaceAll("\r", "\\\\n");
                     System.out.format(
@@ -0,0 +1,23 @@
+
+// Read-only access to a sorted suffix index.
+// The index can either be an int[] in memory (as built by a `SuffixSorter`),
+// or it can be mapped directly from an index file on disk (see `IndexFile`).
+
+public interface SuffixIndex {
+    // The number of suffixes in the index.
+    public int size();
+
+    // The text position of the i:th smallest suffix.
+    public int get(int i);
+
+    public static SuffixIndex of(int[] index) {
+        return new SuffixIndex() {
+            public int size() {
+                return index.length;
+            }
+            public int get(int i) {
+                return index[i];
+            }
+        };
+    }
+}
@@ -2,8 +2,7 @@
 // Abstract class for Suffix sorting algorithms.
 
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.nio.file.Files;
+import java.util.Arrays;
 
 public abstract class SuffixSorter {
     public SuffixArray sa;
@@ -28,7 +27,11 @@ public abstract class SuffixSorter {
     }
 
     public void initIndex(){
-        this.sa.index = new int[this.sa.text.length()];
+        if (this.sa.sparseIndex) {
+            this.sa.index = this.sa.wordStarts();
+            return;
+        }
+        this.sa.index = new int[this.sa.size()];
         for (int i = 0; i < this.sa.index.length; i++) {
             this.sa.index[i] = i;
         }
@@ -36,34 +39,146 @@ public abstract class SuffixSorter {
 
     abstract void sortIndex();
 
+    // Builds the index of the text from the index `oldIndex` of its first `oldSize` bytes,
+    // when new text has been appended after these. Only the suffixes of the new text are
+    // sorted, and then they are inserted into the old index by binary search.
+    //
+    // But the appended text can also change the order of some old suffixes:
+    // if an old suffix is a prefix of another old suffix, it was smaller before,
+    // but now the appended text decides. This can only happen for the suffixes near
+    // the end that also occur somewhere else in the old text, so these are sorted again too.
+    public void appendIndex(int oldSize, SuffixIndex oldIndex) {
+        if (!this.canSortSubsets()) {
+            this.buildIndex();
+            return;
+        }
+        int unstable = oldSize - longestRepeatedSuffix(oldSize, oldIndex);
+
+        // Sort the suffixes of the new text, and the old ones that are unstable.
+        this.sa.index = new int[this.sa.size() - unstable];
+        for (int i = 0; i < this.sa.index.length; i++) {
+            this.sa.index[i] = unstable + i;
+        }
+        this.sortIndex();
+        int[] added = this.sa.index;
+
+        // The old suffixes are still in the same order. We put them at the end of the new index,
+        // and then merge the new ones in from the start. The place of each new suffix is found
+        // by binary search, starting from the place of the previous one. Since there is room for
+        // all new suffixes, the merged ones never overwrite the old ones that are still to be merged.
+        int[] index = new int[this.sa.size()];
+        for (int i = 0, j = added.length; i < oldIndex.size(); i++) {
+            int oldPos = oldIndex.get(i);
+            if (oldPos < unstable) {
+                index[j++] = oldPos;
+            }
+        }
+        int k = 0, next = added.length;
+        for (int pos : added) {
+            int lo = next, hi = index.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.sa.compareSuffixes(index[mid], pos) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            while (next < lo) {
+                index[k++] = index[next++];
+            }
+            index[k++] = pos;
+        }
+        // The remaining old suffixes are already in place.
+        this.sa.index = index;
+    }
+
+    // Returns the length of the longest suffix of the old text that also occurs
+    // somewhere else in the old text. All shorter suffixes occur somewhere else too,
+    // so we can find the length by binary search.
+    private int longestRepeatedSuffix(int oldSize, SuffixIndex oldIndex) {
+        int lo = 0, hi = oldSize;  // the empty suffix is repeated, the whole text is not
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (occursTwice(oldSize - mid, oldSize, oldIndex)) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Returns true if the old text from `start` to the end occurs at least twice in the old text.
+    // The comparisons stop at the end of the old text, since that's how the old index is sorted.
+    private boolean occursTwice(int start, int oldSize, SuffixIndex oldIndex) {
+        int lo = 0, hi = oldIndex.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareOldSuffix(oldIndex.get(mid), start, oldSize) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo + 1 < oldIndex.size()
+            && compareOldSuffix(oldIndex.get(lo), start, oldSize) == 0
+            && compareOldSuffix(oldIndex.get(lo + 1), start, oldSize) == 0;
+    }
+
+    // Compares the old suffix at `pos` with the old text from `start` to the end,
+    // and returns 0 if the suffix starts with that text.
+    private int compareOldSuffix(int pos, int start, int oldSize) {
+        byte[] text = this.sa.text;
+        int length = oldSize - start;
+        int available = Math.min(length, oldSize - pos);
+        int i = Arrays.mismatch(text, pos, pos + available, text, start, start + length);
+        if (i < 0) {
+            return 0;
+        } else if (i == available) {
+            return -1;
+        }
+        return Byte.compareUnsigned(text[pos + i], text[start + i]);
+    }
+
     public void swap(int i, int j) {
+        SortMetrics.swap();
         int tmp = this.sa.index[i];
         this.sa.index[i] = this.sa.index[j];
         this.sa.index[j] = tmp;
     }
 
     public void saveIndex() throws IOException {
-        try (ObjectOutputStream stream = new ObjectOutputStream(
-                Files.newOutputStream(this.sa.indexFile)
-            ))
-        {
-            stream.writeObject(this.sa.index);
-        }
+        IndexFile.write(this.sa.indexFile, this.sa.index, this.sa, this.sa.packedIndex, this.sa.sparseIndex);
+    }
+
+    // Sorters that choose pivots override this, so that we know if `setPivotSelector` makes a difference.
+    public boolean usesPivotSelector() {
+        return false;
+    }
+
+    // Sorters that can sort any subset of the suffixes, not only all of them,
+    // can be used for building the index in chunks (see `ExternalSort`).
+    public boolean canSortSubsets() {
+        return true;
     }
 
+    // Checks the index in memory, or the one mapped from disk if there is none in memory.
     public void checkIndex() {
-        int left = this.sa.index[0];
-        int size = this.sa.size();
-        ProgressBar<?> progressBar = new ProgressBar<>(this.sa.size(), "Checking index");
+        SuffixIndex index = this.sa.searchIndex();
+        int size = index.size();
+        int left = size > 0 ? index.get(0) : 0;
+        int textSize = this.sa.size();
+        ProgressBar<?> progressBar = new ProgressBar<>(size, "Checking index");
         int progressBarInterval = size / 10_000 + 1;
         for (int i = 1; i < size; i++) {
             if (i % progressBarInterval == 0) progressBar.setValue(i);
-            int right = this.sa.index[i];
+            int right = index.get(i);
             if (this.sa.compareSuffixes(left, right) >= 0) {
                 throw new AssertionError(String.format(
                     "Ordering error in positions %d-%d:'%s...' > %d'%s...'", 
-                    i, left, this.sa.text.substring(left, Math.min(left+10, size)), 
-                    right, this.sa.text.substring(right, Math.min(right+10, size))
+                    i, left, this.sa.substring(left, Math.min(left+10, textSize)), 
+                    right, this.sa.substring(right, Math.min(right+10, textSize))
                 ));                    
             }
             left = right;